@@ -1,5 +1,17 @@
 package dev.mzcy.database;
 
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.warmup.Warmup;
+import dev.mzcy.database.warmup.WarmupReport;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
 /**
  * Interface for database
  * @param <E>   Entity
@@ -12,6 +24,36 @@ public interface Database<E> {
      */
     void save(E entity);
 
+    /**
+     * Save entity that expires after the given time to live, unsupported unless the database overrides it
+     * @param entity    Entity
+     * @param ttl       Time to live
+     */
+    default void save(E entity, Duration ttl) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support expiring entities");
+    }
+
+    /**
+     * Save entities, one by one unless the database can write them at once
+     * @param entities  Entities
+     */
+    default void saveAll(Collection<? extends E> entities) {
+        for (E entity : entities) {
+            save(entity);
+        }
+    }
+
+    /**
+     * Save entities that expire after the given time to live, one by one unless the database can write them at once
+     * @param entities  Entities
+     * @param ttl       Time to live
+     */
+    default void saveAll(Collection<? extends E> entities, Duration ttl) {
+        for (E entity : entities) {
+            save(entity, ttl);
+        }
+    }
+
     /**
      * Get entity
      * @param key   Key
@@ -19,4 +61,69 @@ public interface Database<E> {
      */
     E getEntity(String key);
 
+    /**
+     * Get entities in as few round trips as possible, one by one unless the database can read them at once
+     * @param keys  Keys
+     * @return      Entities found, by key
+     */
+    default Map<String, E> getEntities(Collection<String> keys) {
+        Map<String, E> entities = new LinkedHashMap<>();
+        for (String key : keys) {
+            E entity = getEntity(key);
+            if (entity != null) {
+                entities.put(key, entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Delete entity, unsupported unless the database overrides it
+     * @param key   Key
+     */
+    default void deleteEntity(String key) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support deleting entities");
+    }
+
+    /**
+     * Get a page of entities ordered by primary key, starting after the given key
+     * @param afterKey  Key to continue after, or null for the first page
+     * @param limit     Maximum number of entities, an empty page is returned if it is not positive
+     * @return          Page
+     */
+    default Page<E> page(String afterKey, int limit) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support pagination");
+    }
+
+    /**
+     * Set the recorder that receives operation metrics, ignored unless the database overrides it
+     * @param recorder  Recorder, or null to disable metrics
+     */
+    default void setMetricsRecorder(MetricsRecorder recorder) {
+    }
+
+    /**
+     * Subscribe to saves and deletes, delivered asynchronously in order, unsupported unless the database overrides it
+     * @param listener  Listener
+     * @return          Subscription, close it to unsubscribe
+     */
+    default ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support change feeds");
+    }
+
+    /**
+     * Prepare statements, build mappers and open connections ahead of the first request, if the database has any
+     */
+    default void prime() {
+    }
+
+    /**
+     * Prime, then load the given entities in parallel batches of {@link #getEntities(Collection)}, filling any attached cache
+     * @param keys  Keys to load, e.g. {@link dev.mzcy.database.warmup.RecentKeys#top(int)}
+     * @return      Report with the time warm-up took
+     */
+    default WarmupReport warmUp(Collection<String> keys) {
+        return Warmup.run(this, keys);
+    }
+
 }
@@ -0,0 +1,43 @@
+package dev.mzcy.database;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/**
+ * A single page of entities returned by keyset (seek) pagination.
+ * Pass {@link #getNextKey()} as the {@code afterKey} of the next call to continue.
+ *
+ * @param <E> the type of the entity
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class Page<E> {
+
+    /** The entities of this page, ordered by primary key. */
+    List<E> entities;
+
+    /** The primary key of the last entity of this page, or null if there are no further pages. */
+    String nextKey;
+
+    /**
+     * Constructs a Page instance.
+     *
+     * @param entities the entities of this page
+     * @param nextKey the key to continue after, or null if this is the last page
+     */
+    public Page(List<E> entities, String nextKey) {
+        this.entities = entities;
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * Checks if there may be further pages after this one.
+     *
+     * @return true if another page can be requested, false otherwise
+     */
+    public boolean hasNext() {
+        return nextKey != null;
+    }
+}
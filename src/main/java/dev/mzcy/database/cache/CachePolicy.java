@@ -0,0 +1,49 @@
+package dev.mzcy.database.cache;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+
+/**
+ * Size, eviction and expiry settings of a single cache tier.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class CachePolicy {
+
+    /** The maximum number of entries the tier holds. */
+    int maxEntries;
+
+    /** The policy used to pick an entry to evict when the tier is full. */
+    EvictionPolicy evictionPolicy;
+
+    /** How long an entry stays valid after it was written, or null to keep it until evicted. */
+    Duration expireAfterWrite;
+
+    /**
+     * Constructs a CachePolicy instance.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param evictionPolicy the eviction policy
+     * @param expireAfterWrite how long entries stay valid, or null to never expire them
+     */
+    public CachePolicy(int maxEntries, EvictionPolicy evictionPolicy, Duration expireAfterWrite) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.evictionPolicy = evictionPolicy;
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    /**
+     * Constructs a CachePolicy instance whose entries never expire.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param evictionPolicy the eviction policy
+     */
+    public CachePolicy(int maxEntries, EvictionPolicy evictionPolicy) {
+        this(maxEntries, evictionPolicy, null);
+    }
+}
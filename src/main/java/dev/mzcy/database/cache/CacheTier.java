@@ -0,0 +1,265 @@
+package dev.mzcy.database.cache;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded index of a single cache tier. Tracks the write time and version of every key and
+ * applies the tier's {@link CachePolicy}. The near cache keeps the entities themselves in here;
+ * the local tier only keeps metadata, since the entities live in the local store.
+ * <p>
+ * The tier also remembers when the last changes of the source were received, on the local
+ * {@link System#nanoTime()} clock. A value read or written before a change of its key was
+ * received may predate that change, so it is not put.
+ *
+ * @param <V> the type of the cached value
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+class CacheTier<V> {
+
+    /** Maximum number of keys whose last change is remembered. */
+    private static final int MAX_TRACKED_CHANGES = 4096;
+
+    @Getter
+    CachePolicy policy;
+    long expireAfterWriteNanos;
+    LinkedHashMap<String, Entry<V>> entries;
+    LinkedHashMap<String, Change> changes;
+    @NonFinal
+    boolean changesForgotten;
+    @NonFinal
+    long lastForgottenChange;
+
+    /**
+     * Constructs a CacheTier instance.
+     *
+     * @param policy the tier policy
+     */
+    CacheTier(CachePolicy policy) {
+        this.policy = policy;
+        this.expireAfterWriteNanos = policy.getExpireAfterWrite() == null ? Long.MAX_VALUE : policy.getExpireAfterWrite().toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, policy.getEvictionPolicy() == EvictionPolicy.LRU);
+        this.changes = new LinkedHashMap<>();
+    }
+
+    /**
+     * Gets an entry, marking it as used for {@link EvictionPolicy#LRU}.
+     *
+     * @param key the key
+     * @return the entry, or null if absent
+     */
+    synchronized Entry<V> get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Checks if an entry outlived the tier's expire-after-write setting or its own time to live.
+     *
+     * @param entry the entry
+     * @return true if expired, false otherwise
+     */
+    boolean isExpired(Entry<V> entry) {
+        return System.nanoTime() - entry.writtenAt() >= entry.ttlNanos();
+    }
+
+    /**
+     * Puts an entry that expires after the given time to live or the tier's expire-after-write
+     * setting, whichever is shorter, and evicts the entries that no longer fit.
+     *
+     * @param key the key
+     * @param value the value
+     * @param version the version of the value
+     * @param ttlNanos the time to live of the entry in nanoseconds
+     * @return the evicted keys, empty if nothing was evicted
+     */
+    synchronized List<String> put(String key, V value, long version, long ttlNanos) {
+        return store(key, new Entry<>(value, version, System.nanoTime(), Math.min(ttlNanos, expireAfterWriteNanos)));
+    }
+
+    /**
+     * Puts an entry like {@link #put(String, Object, long, long)} unless the tier
+     * {@link #rejects(String, long, boolean, long) rejects} it.
+     *
+     * @param key the key
+     * @param value the value
+     * @param version the version of the value
+     * @param ttlNanos the time to live of the entry in nanoseconds
+     * @param fill true if the value was read from the source rather than written to it
+     * @param startedAt the {@link System#nanoTime()} at which the read or write of the value started
+     * @return the evicted keys, or null if the entry was rejected
+     */
+    synchronized List<String> putIfNewer(String key, V value, long version, long ttlNanos, boolean fill, long startedAt) {
+        return rejects(key, version, fill, startedAt) ? null : put(key, value, version, ttlNanos);
+    }
+
+    /**
+     * Checks if a value about to be put may be older than what the tier knows. It is rejected if
+     * a change of its key to a higher or unknown version was received after its read or write
+     * started, or if the cached entry has a higher version. A fill, a value read from the source, is also rejected by a live entry
+     * of the same version, since that entry was put while the read was running.
+     *
+     * @param key the key
+     * @param version the version of the value
+     * @param fill true if the value was read from the source rather than written to it
+     * @param startedAt the {@link System#nanoTime()} at which the read or write of the value started
+     * @return true if the value must not be put
+     */
+    synchronized boolean rejects(String key, long version, boolean fill, long startedAt) {
+        if (changedSince(key, version, startedAt)) {
+            return true;
+        }
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        return entry.version > version || (fill && entry.version == version && !isExpired(entry));
+    }
+
+    /**
+     * Puts an entry restored from a persistent store, which enforces the remaining time to live
+     * itself, so the tier's expire-after-write setting does not start over.
+     *
+     * @param key the key
+     * @param value the value
+     * @param version the version of the value
+     * @return the evicted keys, empty if nothing was evicted
+     */
+    synchronized List<String> restore(String key, V value, long version) {
+        return store(key, new Entry<>(value, version, System.nanoTime(), Long.MAX_VALUE));
+    }
+
+    /**
+     * Stores an entry and evicts the entries that no longer fit.
+     *
+     * @param key the key
+     * @param entry the entry
+     * @return the evicted keys, empty if nothing was evicted
+     */
+    private List<String> store(String key, Entry<V> entry) {
+        entries.put(key, entry);
+        if (entries.size() <= policy.getMaxEntries()) {
+            return List.of();
+        }
+        List<String> evicted = new ArrayList<>(entries.size() - policy.getMaxEntries());
+        Iterator<Map.Entry<String, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > policy.getMaxEntries() && iterator.hasNext()) {
+            evicted.add(iterator.next().getKey());
+            iterator.remove();
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key the key
+     * @return true if an entry was removed
+     */
+    synchronized boolean remove(String key) {
+        return entries.remove(key) != null;
+    }
+
+    /**
+     * Handles a change of a key: remembers when it was received, so values read or written before
+     * are no longer put, and removes the entry unless it holds at least the changed version.
+     *
+     * @param key the key
+     * @param version the version the change carries, or {@link Long#MAX_VALUE} if unknown
+     * @param receivedAt the {@link System#nanoTime()} at which the change was received
+     * @return true if an entry was removed
+     */
+    synchronized boolean invalidate(String key, long version, long receivedAt) {
+        changes.remove(key);
+        changes.put(key, new Change(receivedAt, version));
+        if (changes.size() > MAX_TRACKED_CHANGES) {
+            Iterator<Map.Entry<String, Change>> eldest = changes.entrySet().iterator();
+            lastForgottenChange = eldest.next().getValue().receivedAt();
+            changesForgotten = true;
+            eldest.remove();
+        }
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.version < version) {
+            entries.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a change of a key to a version higher than the given one may have been received
+     * after the given time. Once the change of a key is forgotten, the latest forgotten change
+     * stands in for it, whatever its version.
+     *
+     * @param key the key
+     * @param version the version of the value about to be put
+     * @param since the {@link System#nanoTime()} to compare with
+     * @return true if such a change was received at or after that time
+     */
+    private boolean changedSince(String key, long version, long since) {
+        Change change = changes.get(key);
+        if (change != null) {
+            return change.receivedAt() - since >= 0 && change.version() > version;
+        }
+        return changesForgotten && lastForgottenChange - since >= 0;
+    }
+
+    /**
+     * Handles changes of unknown keys: removes all entries and treats every value read or written
+     * before now as if a change of its key was received now.
+     *
+     * @param receivedAt the {@link System#nanoTime()} at which the changes were received
+     * @return the keys whose entries were removed
+     */
+    synchronized List<String> invalidateAll(long receivedAt) {
+        List<String> removed = new ArrayList<>(entries.keySet());
+        entries.clear();
+        changes.clear();
+        changesForgotten = true;
+        lastForgottenChange = receivedAt;
+        return removed;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of entries, including expired entries that were not accessed yet.
+     *
+     * @return the number of entries
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A cached value together with its version, write time and time to live.
+     *
+     * @param value the value
+     * @param version the version of the value
+     * @param writtenAt the {@link System#nanoTime()} at which it was written
+     * @param ttlNanos the nanoseconds after which it expires
+     * @param <V> the type of the value
+     */
+    record Entry<V>(V value, long version, long writtenAt, long ttlNanos) {
+    }
+
+    /**
+     * The last change of a key received from the source.
+     *
+     * @param receivedAt the {@link System#nanoTime()} at which it was received
+     * @param version the version it carries, or {@link Long#MAX_VALUE} if unknown
+     */
+    record Change(long receivedAt, long version) {
+    }
+}
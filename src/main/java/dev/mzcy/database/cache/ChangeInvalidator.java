@@ -0,0 +1,75 @@
+package dev.mzcy.database.cache;
+
+import dev.mzcy.database.Database;
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeType;
+import lombok.experimental.FieldDefaults;
+
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Drops cached copies that a change of the remote database made stale, including changes made
+ * by other nodes. A change that carries no entity, such as a SQL changelog entry, or no version,
+ * always drops the cached copy, since nothing tells if the copy predates it. Own writes come
+ * back through the feed as well and drop the copy unless entities are versioned, which costs
+ * one extra remote read.
+ * <p>
+ * Changes are ordered by the local time they were received, never by the timestamp of the
+ * remote database: each tier rejects values whose read or write started before the last change
+ * of their key was received, unless that change carries a version no higher than the value's.
+ *
+ * @param <E> the type of the entity
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+class ChangeInvalidator<E> implements Consumer<ChangeEvent<E>> {
+
+    CacheTier<E> nearCache;
+    CacheTier<Boolean> localIndex;
+    Database<E> local;
+    ToLongFunction<E> versionFunction;
+
+    /**
+     * Constructs a ChangeInvalidator instance.
+     *
+     * @param nearCache the on-heap tier
+     * @param localIndex the index of the local tier
+     * @param local the local store
+     * @param versionFunction extracts the version of an entity, or null if entities carry no version
+     */
+    ChangeInvalidator(CacheTier<E> nearCache, CacheTier<Boolean> localIndex, Database<E> local, ToLongFunction<E> versionFunction) {
+        this.nearCache = nearCache;
+        this.localIndex = localIndex;
+        this.local = local;
+        this.versionFunction = versionFunction;
+    }
+
+    /**
+     * Removes the key from both tiers unless the cached copy holds at least the changed version.
+     * After an {@link ChangeType#OVERFLOW}, all keys are removed.
+     *
+     * @param event the change event
+     */
+    @Override
+    public void accept(ChangeEvent<E> event) {
+        long receivedAt = System.nanoTime();
+        if (event.getType() == ChangeType.OVERFLOW) {
+            nearCache.invalidateAll(receivedAt);
+            synchronized (localIndex) {
+                for (String key : localIndex.invalidateAll(receivedAt)) {
+                    local.deleteEntity(key);
+                }
+            }
+            return;
+        }
+        String key = event.getKey();
+        E entity = event.getEntity();
+        long version = entity == null || versionFunction == null ? Long.MAX_VALUE : versionFunction.applyAsLong(entity);
+        nearCache.invalidate(key, version, receivedAt);
+        synchronized (localIndex) {
+            if (localIndex.invalidate(key, version, receivedAt)) {
+                local.deleteEntity(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package dev.mzcy.database.cache;
+
+/**
+ * Decides which entry a full cache tier gives up first.
+ */
+public enum EvictionPolicy {
+
+    /** Evicts the entry that was accessed least recently. */
+    LRU,
+
+    /** Evicts the entry that was written first, regardless of reads. */
+    FIFO
+
+}
@@ -0,0 +1,494 @@
+package dev.mzcy.database.cache;
+
+import dev.mzcy.database.Database;
+import dev.mzcy.database.Page;
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.sql.MySQLDatabase;
+import dev.mzcy.database.warmup.RecentKeys;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Multi-level cache in front of a remote database. Reads are served from an on-heap near cache
+ * (L1), then from a local store such as a {@link dev.mzcy.database.sql.SQLiteDatabase} or
+ * {@link dev.mzcy.database.nosql.JSONDatabase} (L2), and only then from the remote database,
+ * which stays the source of truth. Writes go to the remote database first and then through both
+ * tiers.
+ * <p>
+ * The local store survives restarts: on construction its keys are indexed again, so a rebooted
+ * node serves reads at local-disk latency right away. Entities are saved to the local store with
+ * a time to live of the local policy's {@link CachePolicy#getExpireAfterWrite()}, so the store
+ * keeps expiring them on its original schedule after a restart.
+ * <p>
+ * The cache subscribes to the change feed of the remote database and drops entries that changes
+ * made stale, including changes by other nodes. Changes made while this node was down are not
+ * seen; entries restored without an expire-after-write setting stay until they are evicted. A
+ * value read from the remote database is not cached if a newer version was cached meanwhile, or
+ * if a change of its key arrived after the read started. A {@link MySQLDatabase} is read on its
+ * primary, since a replica may still return a value older than a change that already arrived.
+ *
+ * @param <E> the type of the entity
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class TieredCacheDatabase<E> implements Database<E> {
+
+    /** Number of entities read per page while indexing the local store on startup. */
+    private static final int WARM_RESTART_PAGE_SIZE = 1000;
+
+    private static final String NEAR_TIER = "near";
+    private static final String LOCAL_TIER = "local";
+
+    Database<E> remote;
+    Database<E> local;
+    Function<E, String> keyFunction;
+    ToLongFunction<E> versionFunction;
+    CacheTier<E> nearCache;
+    CacheTier<Boolean> localIndex;
+    ChangeSubscription remoteChanges;
+    @NonFinal
+    OperationMetrics metrics;
+    @NonFinal
+    RecentKeys recentKeys;
+
+    /**
+     * Constructs a TieredCacheDatabase instance.
+     *
+     * @param remote the remote database, the source of truth
+     * @param local the local store used as second tier
+     * @param keyFunction extracts the primary key of an entity
+     * @param versionFunction extracts a version or last-modified timestamp of an entity, used to keep older copies out of the
+     *                        cache, or null if entities carry no version
+     * @param nearPolicy the policy of the on-heap tier
+     * @param localPolicy the policy of the local tier
+     */
+    public TieredCacheDatabase(Database<E> remote, Database<E> local, Function<E, String> keyFunction, ToLongFunction<E> versionFunction,
+                               CachePolicy nearPolicy, CachePolicy localPolicy) {
+        this.remote = remote;
+        this.local = local;
+        this.keyFunction = keyFunction;
+        this.versionFunction = versionFunction == null ? entity -> 0L : versionFunction;
+        this.nearCache = new CacheTier<>(nearPolicy);
+        this.localIndex = new CacheTier<>(localPolicy);
+        this.metrics = new OperationMetrics("cache", MetricsRecorder.NOOP);
+        indexLocalStore();
+        this.remoteChanges = remote.subscribe(new ChangeInvalidator<>(nearCache, localIndex, local, versionFunction));
+    }
+
+    /**
+     * Constructs a TieredCacheDatabase instance without versioned invalidation.
+     *
+     * @param remote the remote database, the source of truth
+     * @param local the local store used as second tier
+     * @param keyFunction extracts the primary key of an entity
+     * @param nearPolicy the policy of the on-heap tier
+     * @param localPolicy the policy of the local tier
+     */
+    public TieredCacheDatabase(Database<E> remote, Database<E> local, Function<E, String> keyFunction,
+                               CachePolicy nearPolicy, CachePolicy localPolicy) {
+        this(remote, local, keyFunction, null, nearPolicy, localPolicy);
+    }
+
+    /**
+     * Rebuilds the local tier index from the entities already in the local store.
+     */
+    private void indexLocalStore() {
+        String afterKey = null;
+        do {
+            Page<E> page = local.page(afterKey, WARM_RESTART_PAGE_SIZE);
+            for (E entity : page.getEntities()) {
+                for (String evicted : localIndex.restore(keyFunction.apply(entity), Boolean.TRUE, versionFunction.applyAsLong(entity))) {
+                    local.deleteEntity(evicted);
+                }
+            }
+            afterKey = page.getNextKey();
+        } while (afterKey != null);
+    }
+
+    /**
+     * Saves the entity to the remote database and writes it through both cache tiers.
+     *
+     * @param entity the entity to save
+     */
+    @Override
+    public void save(E entity) {
+        long startedAt = System.nanoTime();
+        remote.save(entity);
+        String key = keyFunction.apply(entity);
+        recordAccess(key);
+        cache(key, entity, null, false, startedAt);
+    }
+
+    /**
+     * Saves the entity to the remote database with a time to live and writes it through both
+     * cache tiers, where it expires no later than in the remote database. Entities loaded from
+     * the remote database later on only expire by the tier policies, since their remaining time
+     * to live is not known.
+     *
+     * @param entity the entity to save
+     * @param ttl the time to live
+     */
+    @Override
+    public void save(E entity, Duration ttl) {
+        long startedAt = System.nanoTime();
+        remote.save(entity, ttl);
+        String key = keyFunction.apply(entity);
+        recordAccess(key);
+        cache(key, entity, ttl, false, startedAt);
+    }
+
+    /**
+     * Retrieves an entity from the first tier that has it, falling back to the remote database.
+     *
+     * @param key the primary key of the entity
+     * @return the retrieved entity, or null if not found
+     */
+    @Override
+    public E getEntity(String key) {
+        recordAccess(key);
+        CacheTier.Entry<E> near = nearCache.get(key);
+        if (near != null) {
+            if (!nearCache.isExpired(near)) {
+                metrics.count(NEAR_TIER, OperationMetrics.CACHE_HIT, 1);
+                return near.value();
+            }
+            nearCache.remove(key);
+        }
+        metrics.count(NEAR_TIER, OperationMetrics.CACHE_MISS, 1);
+
+        long startedAt = System.nanoTime();
+        CacheTier.Entry<Boolean> indexed = localIndex.get(key);
+        if (indexed != null) {
+            E entity = localIndex.isExpired(indexed) ? null : local.getEntity(key);
+            if (entity != null) {
+                metrics.count(LOCAL_TIER, OperationMetrics.CACHE_HIT, 1);
+                nearCache.putIfNewer(key, entity, indexed.version(), Long.MAX_VALUE, true, startedAt);
+                return entity;
+            }
+            evictLocal(key);
+        }
+        metrics.count(LOCAL_TIER, OperationMetrics.CACHE_MISS, 1);
+
+        long readAt = System.nanoTime();
+        E entity = readRemote(() -> remote.getEntity(key));
+        if (entity != null) {
+            cache(key, entity, null, true, readAt);
+        }
+        return entity;
+    }
+
+    /**
+     * Retrieves several entities, each from the first tier that has it. Keys missing from the
+     * near cache are read from the local store in one batch, and the remaining ones from the
+     * remote database in one batch, which is then written to the local store at once.
+     *
+     * @param keys the primary keys of the entities
+     * @return the entities found, by primary key
+     */
+    @Override
+    public Map<String, E> getEntities(Collection<String> keys) {
+        Map<String, E> entities = new HashMap<>();
+        Map<String, CacheTier.Entry<Boolean>> indexed = new HashMap<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (String key : keys) {
+            recordAccess(key);
+            CacheTier.Entry<E> near = nearCache.get(key);
+            if (near != null) {
+                if (!nearCache.isExpired(near)) {
+                    metrics.count(NEAR_TIER, OperationMetrics.CACHE_HIT, 1);
+                    entities.put(key, near.value());
+                    continue;
+                }
+                nearCache.remove(key);
+            }
+            metrics.count(NEAR_TIER, OperationMetrics.CACHE_MISS, 1);
+            CacheTier.Entry<Boolean> entry = localIndex.get(key);
+            if (entry != null && !localIndex.isExpired(entry)) {
+                indexed.put(key, entry);
+            } else {
+                if (entry != null) {
+                    evictLocal(key);
+                }
+                metrics.count(LOCAL_TIER, OperationMetrics.CACHE_MISS, 1);
+                remoteKeys.add(key);
+            }
+        }
+
+        if (!indexed.isEmpty()) {
+            long startedAt = System.nanoTime();
+            Map<String, E> stored = local.getEntities(indexed.keySet());
+            for (Map.Entry<String, CacheTier.Entry<Boolean>> entry : indexed.entrySet()) {
+                String key = entry.getKey();
+                E entity = stored.get(key);
+                if (entity != null) {
+                    metrics.count(LOCAL_TIER, OperationMetrics.CACHE_HIT, 1);
+                    nearCache.putIfNewer(key, entity, entry.getValue().version(), Long.MAX_VALUE, true, startedAt);
+                    entities.put(key, entity);
+                } else {
+                    evictLocal(key);
+                    metrics.count(LOCAL_TIER, OperationMetrics.CACHE_MISS, 1);
+                    remoteKeys.add(key);
+                }
+            }
+        }
+
+        if (!remoteKeys.isEmpty()) {
+            long startedAt = System.nanoTime();
+            Map<String, E> loaded = readRemote(() -> remote.getEntities(remoteKeys));
+            fill(loaded, startedAt);
+            entities.putAll(loaded);
+        }
+        return entities;
+    }
+
+    /**
+     * Deletes an entity from the remote database and from both cache tiers.
+     *
+     * @param key the primary key of the entity to delete
+     */
+    @Override
+    public void deleteEntity(String key) {
+        remote.deleteEntity(key);
+        invalidate(key);
+        if (recentKeys != null) {
+            recentKeys.forget(key);
+        }
+    }
+
+    /**
+     * Retrieves a page of entities from the remote database. Pages are not cached.
+     *
+     * @param afterKey the primary key to continue after, or null for the first page
+     * @param limit the maximum number of entities to return
+     * @return the page of entities
+     */
+    @Override
+    public Page<E> page(String afterKey, int limit) {
+        return remote.page(afterKey, limit);
+    }
+
+    /**
+     * Removes an entity from both cache tiers, so the next read goes to the remote database.
+     * Reads that started earlier do not put it back.
+     *
+     * @param key the primary key of the entity
+     */
+    public void invalidate(String key) {
+        invalidate(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Removes an entity from both cache tiers if the cached copy is older than the given version,
+     * e.g. after another node announced that it wrote that version. Reads that started earlier
+     * do not put it back.
+     *
+     * @param key the primary key of the entity
+     * @param version the current version or last-modified timestamp of the entity
+     */
+    public void invalidate(String key, long version) {
+        long now = System.nanoTime();
+        nearCache.invalidate(key, version, now);
+        synchronized (localIndex) {
+            if (localIndex.invalidate(key, version, now)) {
+                local.deleteEntity(key);
+            }
+        }
+    }
+
+    /**
+     * Sets where accessed keys are recorded, so the next start can warm up with
+     * {@code warmUp(recentKeys.top(n))}.
+     *
+     * @param recentKeys the recent keys, or null to stop recording
+     */
+    public void setRecentKeys(RecentKeys recentKeys) {
+        this.recentKeys = recentKeys;
+    }
+
+    /**
+     * Primes the remote database and the local store.
+     */
+    @Override
+    public void prime() {
+        remote.prime();
+        local.prime();
+    }
+
+    /**
+     * Sets the recorder that receives cache metrics, and passes it on to the remote database and the local store.
+     *
+     * @param recorder the metrics recorder, or null to disable metrics
+     */
+    @Override
+    public void setMetricsRecorder(MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("cache", recorder);
+        remote.setMetricsRecorder(recorder);
+        local.setMetricsRecorder(recorder);
+    }
+
+    /**
+     * Stops following the changes of the remote database. The remote database and the local
+     * store stay open.
+     */
+    public void close() {
+        remoteChanges.close();
+    }
+
+    /**
+     * Subscribes to the changes of the remote database.
+     *
+     * @param listener the listener
+     * @return the subscription
+     */
+    @Override
+    public ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        return remote.subscribe(listener);
+    }
+
+    /**
+     * Writes an entity through both cache tiers, evicting whatever no longer fits. A tier that
+     * holds a newer version keeps it.
+     *
+     * @param key the primary key of the entity
+     * @param entity the entity
+     * @param ttl the time to live, or null for none
+     * @param fill true if the entity was read from the remote database rather than saved
+     * @param startedAt the {@link System#nanoTime()} at which the read or save started
+     */
+    private void cache(String key, E entity, Duration ttl, boolean fill, long startedAt) {
+        long ttlNanos = ttl == null ? Long.MAX_VALUE : ttl.toNanos();
+        long version = versionFunction.applyAsLong(entity);
+        List<String> nearEvictions = nearCache.putIfNewer(key, entity, version, ttlNanos, fill, startedAt);
+        if (nearEvictions != null) {
+            metrics.count(NEAR_TIER, OperationMetrics.CACHE_EVICTION, nearEvictions.size());
+        }
+        Duration localTtl = shorter(ttl, localIndex.getPolicy().getExpireAfterWrite());
+        synchronized (localIndex) {
+            if (localIndex.rejects(key, version, fill, startedAt)) {
+                return;
+            }
+            if (localTtl == null) {
+                local.save(entity);
+            } else {
+                local.save(entity, localTtl);
+            }
+            for (String evicted : localIndex.put(key, Boolean.TRUE, version, ttlNanos)) {
+                local.deleteEntity(evicted);
+                metrics.count(LOCAL_TIER, OperationMetrics.CACHE_EVICTION, 1);
+            }
+        }
+    }
+
+    /**
+     * Writes entities read from the remote database through both cache tiers, saving those the
+     * local tier accepts to the local store at once. A tier that holds a newer version keeps it.
+     *
+     * @param entities the entities, by primary key
+     * @param startedAt the {@link System#nanoTime()} at which the read started
+     */
+    private void fill(Map<String, E> entities, long startedAt) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        Map<String, Long> versions = new HashMap<>();
+        for (Map.Entry<String, E> entry : entities.entrySet()) {
+            long version = versionFunction.applyAsLong(entry.getValue());
+            versions.put(entry.getKey(), version);
+            List<String> nearEvictions = nearCache.putIfNewer(entry.getKey(), entry.getValue(), version, Long.MAX_VALUE, true, startedAt);
+            if (nearEvictions != null) {
+                metrics.count(NEAR_TIER, OperationMetrics.CACHE_EVICTION, nearEvictions.size());
+            }
+        }
+        Duration localTtl = localIndex.getPolicy().getExpireAfterWrite();
+        synchronized (localIndex) {
+            List<String> accepted = new ArrayList<>();
+            List<E> stored = new ArrayList<>();
+            for (Map.Entry<String, E> entry : entities.entrySet()) {
+                if (!localIndex.rejects(entry.getKey(), versions.get(entry.getKey()), true, startedAt)) {
+                    accepted.add(entry.getKey());
+                    stored.add(entry.getValue());
+                }
+            }
+            if (stored.isEmpty()) {
+                return;
+            }
+            if (localTtl == null) {
+                local.saveAll(stored);
+            } else {
+                local.saveAll(stored, localTtl);
+            }
+            for (String key : accepted) {
+                for (String evicted : localIndex.put(key, Boolean.TRUE, versions.get(key), Long.MAX_VALUE)) {
+                    local.deleteEntity(evicted);
+                    metrics.count(LOCAL_TIER, OperationMetrics.CACHE_EVICTION, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the shorter of two optional durations.
+     *
+     * @param first the first duration, or null
+     * @param second the second duration, or null
+     * @return the shorter duration, or null if both are null
+     */
+    private static Duration shorter(Duration first, Duration second) {
+        if (first == null) {
+            return second;
+        }
+        return second == null || first.compareTo(second) <= 0 ? first : second;
+    }
+
+    /**
+     * Records an access to a key if recent keys are tracked.
+     *
+     * @param key the primary key of the entity
+     */
+    private void recordAccess(String key) {
+        RecentKeys recent = recentKeys;
+        if (recent != null) {
+            recent.record(key);
+        }
+    }
+
+    /**
+     * Runs a read of the remote database on its primary if it has replicas, so the value is not
+     * older than the changes already received.
+     *
+     * @param read the read
+     * @param <T> the type of the result
+     * @return the result of the read
+     */
+    private <T> T readRemote(Supplier<T> read) {
+        return remote instanceof MySQLDatabase<E> mySQL ? mySQL.readFromPrimary(read) : read.get();
+    }
+
+    /**
+     * Removes an entity from the local tier and its store.
+     *
+     * @param key the primary key of the entity
+     */
+    private void evictLocal(String key) {
+        synchronized (localIndex) {
+            if (localIndex.remove(key)) {
+                local.deleteEntity(key);
+            }
+        }
+    }
+}
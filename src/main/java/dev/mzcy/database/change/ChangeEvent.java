@@ -0,0 +1,49 @@
+package dev.mzcy.database.change;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+/**
+ * Announces that an entity changed. Events that come from another node may not carry the
+ * entity itself; listeners that keep local copies should invalidate them by key.
+ *
+ * @param <E> the type of the entity
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class ChangeEvent<E> {
+
+    /** The kind of change. */
+    ChangeType type;
+
+    /** The primary key of the changed entity, or null for {@link ChangeType#OVERFLOW}. */
+    String key;
+
+    /** The entity after a save, or null for deletes and when the backend does not provide it. */
+    E entity;
+
+    /** When the change happened. */
+    Instant timestamp;
+
+    /**
+     * Constructs a ChangeEvent instance.
+     *
+     * @param type the kind of change
+     * @param key the primary key of the entity, or null for {@link ChangeType#OVERFLOW}
+     * @param entity the entity after a save, or null
+     * @param timestamp when the change happened
+     */
+    public ChangeEvent(ChangeType type, String key, E entity, Instant timestamp) {
+        this.type = type;
+        this.key = key;
+        this.entity = entity;
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + key + " at " + timestamp;
+    }
+}
@@ -0,0 +1,165 @@
+package dev.mzcy.database.change;
+
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Delivers change events of one database to its listeners. Events are queued by the publishing
+ * thread and handed to the listeners in batches on a dedicated thread, so slow listeners never
+ * hold up database operations. The thread is started with the first subscription.
+ * <p>
+ * The queue is bounded. If it fills up, the queued events are replaced by a single
+ * {@link ChangeType#OVERFLOW} event, so memory stays bounded and listeners still learn that they
+ * missed changes.
+ *
+ * @param <E> the type of the entity
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class ChangeFeed<E> implements AutoCloseable {
+
+    /** Default maximum number of events handed to a listener at once. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /** Default maximum number of events waiting for delivery. */
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    String name;
+    int batchSize;
+    BlockingQueue<ChangeEvent<E>> queue;
+    List<Consumer<List<ChangeEvent<E>>>> listeners = new CopyOnWriteArrayList<>();
+    @NonFinal
+    ExecutorService dispatcher;
+
+    /**
+     * Constructs a ChangeFeed instance.
+     *
+     * @param name the name of the dispatcher thread
+     * @param batchSize the maximum number of events per batch
+     * @param capacity the maximum number of events waiting for delivery
+     */
+    public ChangeFeed(String name, int batchSize, int capacity) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Constructs a ChangeFeed instance with the {@link #DEFAULT_BATCH_SIZE} and {@link #DEFAULT_CAPACITY}.
+     *
+     * @param name the name of the dispatcher thread
+     */
+    public ChangeFeed(String name) {
+        this(name, DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Checks if anyone listens. Publishers may skip building events while nobody does.
+     *
+     * @return true if there is at least one listener, false otherwise
+     */
+    public boolean hasSubscribers() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Subscribes a listener to single events. Events are still dispatched in batches; the listener
+     * is called once per event, in order.
+     *
+     * @param listener the listener
+     * @return the subscription
+     */
+    public ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        return subscribeBatches(batch -> batch.forEach(listener));
+    }
+
+    /**
+     * Subscribes a listener to batches of events.
+     *
+     * @param listener the listener
+     * @return the subscription
+     */
+    public synchronized ChangeSubscription subscribeBatches(Consumer<List<ChangeEvent<E>>> listener) {
+        listeners.add(listener);
+        if (dispatcher == null) {
+            dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            dispatcher.execute(this::dispatch);
+        }
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Queues an event for delivery. Events are dropped while there are no listeners. If the queue
+     * is full, it is replaced by a {@link ChangeType#OVERFLOW} event; the publisher never blocks.
+     *
+     * @param event the event
+     */
+    public void publish(ChangeEvent<E> event) {
+        if (hasSubscribers() && !queue.offer(event)) {
+            overflow(event.getTimestamp());
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread. Queued events are discarded.
+     */
+    @Override
+    public synchronized void close() {
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+            dispatcher = null;
+        }
+        listeners.clear();
+        queue.clear();
+    }
+
+    /**
+     * Drops the queued events and queues a {@link ChangeType#OVERFLOW} event in their place, which
+     * also stands for the event that did not fit.
+     *
+     * @param timestamp when the event that did not fit happened
+     */
+    private synchronized void overflow(Instant timestamp) {
+        ChangeEvent<E> overflow = new ChangeEvent<>(ChangeType.OVERFLOW, null, null, timestamp);
+        while (!queue.offer(overflow)) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Takes batches off the queue and hands them to every listener until interrupted.
+     */
+    private void dispatch() {
+        List<ChangeEvent<E>> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            List<ChangeEvent<E>> delivered = List.copyOf(batch);
+            batch.clear();
+            for (Consumer<List<ChangeEvent<E>>> listener : listeners) {
+                try {
+                    listener.accept(delivered);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
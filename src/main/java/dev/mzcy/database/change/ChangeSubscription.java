@@ -0,0 +1,15 @@
+package dev.mzcy.database.change;
+
+/**
+ * Handle of a change listener. Closing it stops the delivery of further events.
+ */
+@FunctionalInterface
+public interface ChangeSubscription extends AutoCloseable {
+
+    /**
+     * Unsubscribes the listener.
+     */
+    @Override
+    void close();
+
+}
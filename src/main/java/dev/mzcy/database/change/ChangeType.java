@@ -0,0 +1,20 @@
+package dev.mzcy.database.change;
+
+/**
+ * The kind of change a {@link ChangeEvent} describes.
+ */
+public enum ChangeType {
+
+    /** The entity was inserted or replaced. */
+    SAVE,
+
+    /** The entity was deleted. */
+    DELETE,
+
+    /**
+     * Events were dropped because the listeners fell behind, so any entity may have changed. The
+     * event carries no key; listeners that keep local copies should drop all of them.
+     */
+    OVERFLOW
+
+}
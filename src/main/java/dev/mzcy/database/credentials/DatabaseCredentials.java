@@ -4,6 +4,10 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.FieldDefaults;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Database credentials class. Used to store database connection information.
  */
@@ -20,6 +24,9 @@ public class DatabaseCredentials {
     // Used for MongoDB connection
     String connectionUrl;
 
+    // Used for MySQL read replicas
+    List<DatabaseCredentials> replicas = new ArrayList<>();
+
     /**
      * Constructor
      * @param host              Host
@@ -69,6 +76,17 @@ public class DatabaseCredentials {
         return new DatabaseCredentials(null, 0, database, null, null, connectionUrl);
     }
 
+    /**
+     * Adds a read replica of a MySQL primary. The replica uses the same database, username and password.
+     * @param host  Host of the replica
+     * @param port  Port of the replica
+     * @return      These credentials, for chaining
+     */
+    public DatabaseCredentials addReplica(String host, int port) {
+        replicas.add(new DatabaseCredentials(host, port, database, username, password, null));
+        return this;
+    }
+
     /**
      * Checks if the database is MongoDB.
      * @return  True if MongoDB, false otherwise
@@ -124,4 +142,12 @@ public class DatabaseCredentials {
     public String getConnectionUrl() {
         return connectionUrl;
     }
+
+    /**
+     * Gets the read replicas of the database.
+     * @return  the read replicas, empty if there are none
+     */
+    public List<DatabaseCredentials> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
 }
@@ -0,0 +1,100 @@
+package dev.mzcy.database.metrics;
+
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two buckets. Percentiles are reported as the upper
+ * bound of the bucket they fall into, so they are accurate to within a factor of two.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class Histogram {
+
+    LongAdder count = new LongAdder();
+    LongAdder sum = new LongAdder();
+    AtomicLong max = new AtomicLong();
+    AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, negative values are recorded as zero
+     */
+    public void record(long value) {
+        long clamped = Math.max(0L, value);
+        count.increment();
+        sum.add(clamped);
+        max.accumulateAndGet(clamped, Math::max);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(clamped) - (clamped == 0 ? 0 : 1));
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of all recorded values.
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the maximum
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of all recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * Gets an approximate percentile.
+     *
+     * @param quantile the quantile between 0 and 1, e.g. 0.99
+     * @return the upper bound of the bucket containing the quantile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(i == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d max=%d", getCount(), getMean(), getPercentile(0.5), getPercentile(0.99), getMax());
+    }
+}
@@ -0,0 +1,90 @@
+package dev.mzcy.database.metrics;
+
+import lombok.experimental.FieldDefaults;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple in-memory {@link MetricsRecorder}, meant for tests and ad-hoc diagnostics.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class InMemoryMetricsRegistry implements MetricsRecorder {
+
+    Map<MetricKey, Histogram> timers = new ConcurrentHashMap<>();
+    Map<MetricKey, LongAdder> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordTime(String backend, String table, String metric, long nanos) {
+        timers.computeIfAbsent(new MetricKey(backend, table, metric), key -> new Histogram()).record(nanos);
+    }
+
+    @Override
+    public void recordCount(String backend, String table, String metric, long amount) {
+        counters.computeIfAbsent(new MetricKey(backend, table, metric), key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Gets the timer for the given tags.
+     *
+     * @param backend the backend name
+     * @param table the table name
+     * @param metric the metric name
+     * @return the histogram of recorded nanoseconds, or null if nothing was recorded
+     */
+    public Histogram getTimer(String backend, String table, String metric) {
+        return timers.get(new MetricKey(backend, table, metric));
+    }
+
+    /**
+     * Gets the counter value for the given tags.
+     *
+     * @param backend the backend name
+     * @param table the table name
+     * @param metric the metric name
+     * @return the counter value, or 0 if nothing was recorded
+     */
+    public long getCount(String backend, String table, String metric) {
+        LongAdder counter = counters.get(new MetricKey(backend, table, metric));
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Removes all recorded metrics.
+     */
+    public void reset() {
+        timers.clear();
+        counters.clear();
+    }
+
+    /**
+     * Renders all metrics, one per line, sorted by name.
+     *
+     * @return the rendered metrics
+     */
+    public String dump() {
+        Map<String, String> lines = new TreeMap<>();
+        timers.forEach((key, histogram) -> lines.put(key.toString(), histogram.toString()));
+        counters.forEach((key, counter) -> lines.put(key.toString(), String.valueOf(counter.sum())));
+        StringBuilder builder = new StringBuilder();
+        lines.forEach((name, value) -> builder.append(name).append(' ').append(value).append('\n'));
+        return builder.toString();
+    }
+
+    /**
+     * Identifies a metric by its tags.
+     *
+     * @param backend the backend name
+     * @param table the table name
+     * @param metric the metric name
+     */
+    private record MetricKey(String backend, String table, String metric) {
+
+        @Override
+        public String toString() {
+            return metric + "{backend=" + backend + ",table=" + table + "}";
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package dev.mzcy.database.metrics;
+
+/**
+ * Pluggable instrumentation surface for database operations. Implementations receive timings and
+ * counters tagged by backend and table, and can bridge them to Micrometer, a tracer or a log.
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Recorder that drops everything. Used when no instrumentation is configured.
+     */
+    MetricsRecorder NOOP = new MetricsRecorder() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordTime(String backend, String table, String metric, long nanos) {
+        }
+
+        @Override
+        public void recordCount(String backend, String table, String metric, long amount) {
+        }
+    };
+
+    /**
+     * Checks if this recorder wants measurements. Disabled recorders are never asked to record,
+     * and the databases skip reading the clock entirely.
+     *
+     * @return true if enabled, false otherwise
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Tracing hook called right before an operation starts. The matching end is the
+     * {@link #recordTime(String, String, String, long)} call for the same operation.
+     *
+     * @param backend the backend name
+     * @param table the table or collection name
+     * @param operation the operation name
+     */
+    default void operationStarted(String backend, String table, String operation) {
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param backend the backend name
+     * @param table the table or collection name
+     * @param metric the metric name
+     * @param nanos the duration in nanoseconds
+     */
+    void recordTime(String backend, String table, String metric, long nanos);
+
+    /**
+     * Records a count, such as rows read or bytes written.
+     *
+     * @param backend the backend name
+     * @param table the table or collection name
+     * @param metric the metric name
+     * @param amount the amount to add
+     */
+    void recordCount(String backend, String table, String metric, long amount);
+}
@@ -0,0 +1,127 @@
+package dev.mzcy.database.metrics;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Binds a {@link MetricsRecorder} to a backend and offers the helpers the databases use to
+ * time their operations. All methods return immediately when the recorder is disabled.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class OperationMetrics {
+
+    /** Latency of saving an entity. */
+    public static final String SAVE = "save";
+    /** Latency of saving several entities at once. */
+    public static final String SAVE_MANY = "saveMany";
+    /** Latency of retrieving an entity. */
+    public static final String GET = "get";
+    /** Latency of retrieving several entities at once. */
+    public static final String GET_MANY = "getMany";
+    /** Latency of deleting an entity. */
+    public static final String DELETE = "delete";
+    /** Latency of reading a page of entities. */
+    public static final String PAGE = "page";
+    /** Duration of preparing statements and connections ahead of traffic. */
+    public static final String PRIME = "prime";
+    /** Latency of creating a table. */
+    public static final String CREATE_TABLE = "createTable";
+    /** Time an operation waits for the shared connection and its cached statement before running. */
+    public static final String CONNECTION_WAIT = "connection.wait";
+    /** Time spent serializing entities. */
+    public static final String SERIALIZE = "serialize";
+    /** Time spent deserializing entities. */
+    public static final String DESERIALIZE = "deserialize";
+    /** Number of rows or documents read. */
+    public static final String ROWS_READ = "rows.read";
+    /** Number of rows or documents written. */
+    public static final String ROWS_WRITTEN = "rows.written";
+    /** Number of bytes read from storage. */
+    public static final String BYTES_READ = "bytes.read";
+    /** Number of bytes written to storage. */
+    public static final String BYTES_WRITTEN = "bytes.written";
+    /** Number of statements served from the statement cache. */
+    public static final String STATEMENT_CACHE_HIT = "statement.cache.hit";
+    /** Number of statements that had to be prepared. */
+    public static final String STATEMENT_CACHE_MISS = "statement.cache.miss";
+    /** Number of reads served by a cache tier. */
+    public static final String CACHE_HIT = "cache.hit";
+    /** Number of reads a cache tier could not serve. */
+    public static final String CACHE_MISS = "cache.miss";
+    /** Number of entries evicted from a cache tier. */
+    public static final String CACHE_EVICTION = "cache.eviction";
+    /** Duration of an expiry sweep. */
+    public static final String SWEEP = "sweep";
+    /** Number of entities removed because their time to live ran out. */
+    public static final String EXPIRED = "rows.expired";
+    /** Suffix of the per-operation error counters, e.g. {@code save.errors}. */
+    public static final String ERRORS = ".errors";
+
+    String backend;
+    MetricsRecorder recorder;
+
+    /**
+     * Constructs an OperationMetrics instance.
+     *
+     * @param backend the backend name used as tag
+     * @param recorder the recorder to report to
+     */
+    public OperationMetrics(String backend, MetricsRecorder recorder) {
+        this.backend = backend;
+        this.recorder = recorder == null ? MetricsRecorder.NOOP : recorder;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param table the table name
+     * @param operation the operation name
+     * @return the start timestamp to pass to {@link #stop(String, String, long)}
+     */
+    public long start(String table, String operation) {
+        if (!recorder.isEnabled()) {
+            return 0L;
+        }
+        recorder.operationStarted(backend, table, operation);
+        return System.nanoTime();
+    }
+
+    /**
+     * Stops timing an operation and records its latency.
+     *
+     * @param table the table name
+     * @param operation the operation name
+     * @param start the timestamp returned by {@link #start(String, String)}
+     */
+    public void stop(String table, String operation, long start) {
+        if (recorder.isEnabled()) {
+            recorder.recordTime(backend, table, operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a count.
+     *
+     * @param table the table name
+     * @param metric the metric name
+     * @param amount the amount to add
+     */
+    public void count(String table, String metric, long amount) {
+        if (recorder.isEnabled()) {
+            recorder.recordCount(backend, table, metric, amount);
+        }
+    }
+
+    /**
+     * Records a failed operation.
+     *
+     * @param table the table name
+     * @param operation the operation that failed
+     */
+    public void error(String table, String operation) {
+        if (recorder.isEnabled()) {
+            recorder.recordCount(backend, table, operation + ERRORS, 1);
+        }
+    }
+}
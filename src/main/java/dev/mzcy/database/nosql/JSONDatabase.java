@@ -2,32 +2,109 @@ package dev.mzcy.database.nosql;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
 import com.google.gson.reflect.TypeToken;
 import dev.mzcy.database.Database;
+import dev.mzcy.database.Page;
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeFeed;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.change.ChangeType;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
 import dev.mzcy.database.nosql.annotation.PrimaryKey;
+import dev.mzcy.database.nosql.expiry.TimingWheel;
+import dev.mzcy.database.nosql.format.BlockCompressedInputStream;
+import dev.mzcy.database.nosql.format.BlockCompressedOutputStream;
+import dev.mzcy.database.nosql.format.CorruptedDataException;
+import dev.mzcy.database.snapshot.SnapshotReport;
+import dev.mzcy.database.snapshot.Snapshottable;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
 
 /**
  * Implementation of the Database interface for JSON storage.
+ * <p>
+ * The file is rewritten to a temporary file, flushed to disk and moved over the old one on every
+ * change, so a crash mid-write leaves the previous version intact. See {@link JSONStorageFormat} for the
+ * available on-disk formats.
+ * <p>
+ * Entities saved with a time to live are tracked in a {@link TimingWheel} and stored with their
+ * deadlines in a {@code .ttl} file next to the data file. Expired entities are invisible right
+ * away and removed by a background sweeper that visits one tick of the wheel at a time.
+ * <p>
+ * Since every change rewrites the file, the file always holds the current entities, and
+ * {@link #snapshot(Path)} copies it instead of serializing them again. Under the lock it only
+ * links the file under a second name; the move of the next write leaves that link on the old
+ * content, so the copy made afterwards cannot be torn by changes and writers are not held up.
  *
  * @param <E> the type of the entity
  */
 @Getter
 @FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
-public class JSONDatabase<E> implements Database<E> {
+public class JSONDatabase<E> implements Database<E>, Snapshottable {
+
+    /** Maximum number of expired entities removed per sweep. */
+    private static final int SWEEP_BATCH_SIZE = 1000;
+
+    /** The type of the map of serialized entities. */
+    private static final Type DOCUMENTS_TYPE = TypeToken.getParameterized(Map.class, String.class, JsonElement.class).getType();
 
     File file;
+    JSONStorageFormat format;
     Gson gson;
     Type type;
     Map<String, E> data;
+    NavigableSet<String> keyIndex;
     Class<E> entityClass;
+    ChangeFeed<E> changeFeed;
+    File expiryFile;
+    TimingWheel expiries;
+    @NonFinal
+    OperationMetrics metrics;
+    @Getter(lombok.AccessLevel.NONE)
+    AtomicLong snapshotLinks;
+    @NonFinal
+    @Getter(lombok.AccessLevel.NONE)
+    boolean fileStale;
+    @NonFinal
+    boolean expiriesChanged;
+    @NonFinal
+    ScheduledExecutorService sweeper;
+    @NonFinal
+    Set<String> changedSinceSnapshot;
 
     /**
      * Constructs a JSONDatabase instance.
@@ -36,11 +113,58 @@ public class JSONDatabase<E> implements Database<E> {
      * @param entityClass the class of the entity
      */
     public JSONDatabase(String filePath, Class<E> entityClass) {
+        this(filePath, entityClass, JSONStorageFormat.PRETTY, MetricsRecorder.NOOP);
+    }
+
+    /**
+     * Constructs a JSONDatabase instance that stores its file in the given format.
+     *
+     * @param filePath the path to the JSON file
+     * @param entityClass the class of the entity
+     * @param format the on-disk format
+     */
+    public JSONDatabase(String filePath, Class<E> entityClass, JSONStorageFormat format) {
+        this(filePath, entityClass, format, MetricsRecorder.NOOP);
+    }
+
+    /**
+     * Constructs a JSONDatabase instance that reports to the given metrics recorder.
+     *
+     * @param filePath the path to the JSON file
+     * @param entityClass the class of the entity
+     * @param recorder the metrics recorder
+     */
+    public JSONDatabase(String filePath, Class<E> entityClass, MetricsRecorder recorder) {
+        this(filePath, entityClass, JSONStorageFormat.PRETTY, recorder);
+    }
+
+    /**
+     * Constructs a JSONDatabase instance that stores its file in the given format and reports to the given metrics recorder.
+     *
+     * @param filePath the path to the JSON file
+     * @param entityClass the class of the entity
+     * @param format the on-disk format
+     * @param recorder the metrics recorder
+     * @throws IllegalStateException if the file is compressed and fails its checksums, so it is not overwritten
+     */
+    public JSONDatabase(String filePath, Class<E> entityClass, JSONStorageFormat format, MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("json", recorder);
         this.entityClass = entityClass;
         this.file = new File(filePath);
-        this.gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+        this.format = format;
+        GsonBuilder gsonBuilder = new GsonBuilder().disableHtmlEscaping();
+        if (format == JSONStorageFormat.PRETTY) {
+            gsonBuilder.setPrettyPrinting();
+        }
+        this.gson = gsonBuilder.create();
         this.type = TypeToken.getParameterized(HashMap.class, String.class, entityClass).getType();
         this.data = loadData();
+        this.keyIndex = new TreeSet<>(data.keySet());
+        this.snapshotLinks = new AtomicLong();
+        this.changeFeed = new ChangeFeed<>("json-changes-" + file.getName());
+        this.expiryFile = new File(file.getPath() + ".ttl");
+        this.expiries = new TimingWheel(System.currentTimeMillis());
+        loadExpiries();
     }
 
     /**
@@ -52,35 +176,243 @@ public class JSONDatabase<E> implements Database<E> {
         if (!file.exists()) {
             return new HashMap<>();
         }
-        try (Reader reader = new FileReader(file)) {
-            return gson.fromJson(reader, type);
+        long start = metrics.start(file.getName(), OperationMetrics.DESERIALIZE);
+        try (Reader reader = openReader(file)) {
+            Map<String, E> loaded = gson.fromJson(reader, type);
+            metrics.count(file.getName(), OperationMetrics.BYTES_READ, file.length());
+            return loaded == null ? new HashMap<>() : loaded;
+        } catch (JsonParseException e) {
+            // Gson wraps the I/O errors of the underlying reader
+            if (e.getCause() instanceof CorruptedDataException corrupted) {
+                metrics.error(file.getName(), OperationMetrics.DESERIALIZE);
+                throw new IllegalStateException("Corrupted data in " + file + ", refusing to overwrite it", corrupted);
+            }
+            throw e;
+        } catch (CorruptedDataException e) {
+            metrics.error(file.getName(), OperationMetrics.DESERIALIZE);
+            throw new IllegalStateException("Corrupted data in " + file + ", refusing to overwrite it", e);
         } catch (IOException e) {
+            metrics.error(file.getName(), OperationMetrics.DESERIALIZE);
             e.printStackTrace();
+            fileStale = true;
             return new HashMap<>();
+        } finally {
+            metrics.stop(file.getName(), OperationMetrics.DESERIALIZE, start);
         }
     }
 
     /**
-     * Saves data to the JSON file.
+     * Loads the deadlines of entities saved with a time to live and starts the sweeper if there are any.
+     */
+    private void loadExpiries() {
+        if (!expiryFile.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(expiryFile), StandardCharsets.UTF_8)) {
+            Map<String, Long> deadlines = gson.fromJson(reader, TypeToken.getParameterized(HashMap.class, String.class, Long.class).getType());
+            if (deadlines != null) {
+                deadlines.forEach((key, deadline) -> {
+                    if (data.containsKey(key)) {
+                        expiries.schedule(key, deadline);
+                    }
+                });
+            }
+        } catch (IOException | JsonParseException e) {
+            e.printStackTrace();
+        }
+        if (expiries.size() > 0) {
+            startSweeper();
+        }
+    }
+
+    /**
+     * Opens a reader on a JSON file, decompressing it if it is block-compressed.
+     *
+     * @param source the file to read
+     * @return the reader
+     * @throws IOException if the file could not be opened
+     */
+    private Reader openReader(File source) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(source));
+        if (BlockCompressedInputStream.isBlockCompressed(in)) {
+            in = new BlockCompressedInputStream(in);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens a writer on the given file in the configured format.
+     *
+     * @param target the file to write
+     * @return the writer
+     * @throws IOException if the file could not be opened
+     */
+    private Writer openWriter(File target) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+        if (format == JSONStorageFormat.COMPRESSED) {
+            out = new BlockCompressedOutputStream(out, Deflater.BEST_SPEED);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Saves data to the JSON file by writing a temporary file and moving it over the old one.
      */
     private void saveData() {
-        try (Writer writer = new FileWriter(file)) {
-            gson.toJson(data, writer);
-        } catch (IOException e) {
+        long start = metrics.start(file.getName(), OperationMetrics.SERIALIZE);
+        Path target = file.toPath();
+        Path temporary = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            try (Writer writer = openWriter(temporary.toFile())) {
+                gson.toJson(data, type, writer);
+            }
+            force(temporary);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileStale = false;
+            if (expiriesChanged) {
+                saveExpiries();
+            }
+        } catch (IOException | JsonIOException e) {
+            fileStale = true;
+            metrics.error(file.getName(), OperationMetrics.SERIALIZE);
             e.printStackTrace();
         }
+        metrics.stop(file.getName(), OperationMetrics.SERIALIZE, start);
+        metrics.count(file.getName(), OperationMetrics.BYTES_WRITTEN, file.length());
+    }
+
+    /**
+     * Saves the deadlines of all entities with a time to live, or deletes the file if there are none.
+     *
+     * @throws IOException if the file could not be written
+     */
+    private void saveExpiries() throws IOException {
+        writeDeadlines(expiryFile.toPath(), expiries.getDeadlines());
+        expiriesChanged = false;
+    }
+
+    /**
+     * Writes deadlines to a {@code .ttl} file, or deletes it if there are none.
+     *
+     * @param target the file to write
+     * @param deadlines the deadlines by key
+     * @throws IOException if the file could not be written
+     */
+    private void writeDeadlines(Path target, Map<String, Long> deadlines) throws IOException {
+        if (deadlines.isEmpty()) {
+            Files.deleteIfExists(target);
+            return;
+        }
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary.toFile()), StandardCharsets.UTF_8))) {
+            gson.toJson(deadlines, writer);
+        }
+        force(temporary);
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Saves the provided entity to the JSON file. A time to live set by an earlier save is cleared.
+     *
+     * @param entity the entity to save
+     */
+    @Override
+    public synchronized void save(E entity) {
+        if (expiries.cancel(getKey(entity))) {
+            expiriesChanged = true;
+        }
+        put(entity);
     }
 
     /**
-     * Saves the provided entity to the JSON file.
+     * Saves the provided entity to the JSON file and schedules it to expire after the given time to live.
      *
      * @param entity the entity to save
+     * @param ttl the time to live
+     */
+    @Override
+    public synchronized void save(E entity, Duration ttl) {
+        expiries.schedule(getKey(entity), System.currentTimeMillis() + ttl.toMillis());
+        expiriesChanged = true;
+        startSweeper();
+        put(entity);
+    }
+
+    /**
+     * Saves the provided entities to the JSON file, writing it once. A time to live set by an
+     * earlier save is cleared.
+     *
+     * @param entities the entities to save
+     */
+    @Override
+    public synchronized void saveAll(Collection<? extends E> entities) {
+        for (E entity : entities) {
+            if (expiries.cancel(getKey(entity))) {
+                expiriesChanged = true;
+            }
+        }
+        putAll(entities);
+    }
+
+    /**
+     * Saves the provided entities to the JSON file, writing it once, and schedules them to expire
+     * after the given time to live.
+     *
+     * @param entities the entities to save
+     * @param ttl the time to live
      */
     @Override
-    public void save(E entity) {
+    public synchronized void saveAll(Collection<? extends E> entities, Duration ttl) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + ttl.toMillis();
+        for (E entity : entities) {
+            expiries.schedule(getKey(entity), deadline);
+        }
+        expiriesChanged = true;
+        startSweeper();
+        putAll(entities);
+    }
+
+    /**
+     * Stores the entity and writes the file.
+     *
+     * @param entity the entity to store
+     */
+    private void put(E entity) {
+        long start = metrics.start(file.getName(), OperationMetrics.SAVE);
         String key = getKey(entity);
-        data.put(key, entity);
+        store(key, entity);
         saveData();
+        metrics.count(file.getName(), OperationMetrics.ROWS_WRITTEN, 1);
+        metrics.stop(file.getName(), OperationMetrics.SAVE, start);
+        publish(ChangeType.SAVE, key, entity);
+    }
+
+    /**
+     * Stores the entities and writes the file once.
+     *
+     * @param entities the entities to store
+     */
+    private void putAll(Collection<? extends E> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        long start = metrics.start(file.getName(), OperationMetrics.SAVE_MANY);
+        List<String> keys = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            String key = getKey(entity);
+            store(key, entity);
+            keys.add(key);
+        }
+        saveData();
+        metrics.count(file.getName(), OperationMetrics.ROWS_WRITTEN, entities.size());
+        metrics.stop(file.getName(), OperationMetrics.SAVE_MANY, start);
+        int index = 0;
+        for (E entity : entities) {
+            publish(ChangeType.SAVE, keys.get(index++), entity);
+        }
     }
 
     /**
@@ -90,8 +422,69 @@ public class JSONDatabase<E> implements Database<E> {
      * @return the retrieved entity, or null if not found
      */
     @Override
-    public E getEntity(String key) {
-        return data.get(key);
+    public synchronized E getEntity(String key) {
+        long start = metrics.start(file.getName(), OperationMetrics.GET);
+        E entity = expiries.isExpired(key, System.currentTimeMillis()) ? null : data.get(key);
+        if (entity != null) {
+            metrics.count(file.getName(), OperationMetrics.ROWS_READ, 1);
+        }
+        metrics.stop(file.getName(), OperationMetrics.GET, start);
+        return entity;
+    }
+
+    /**
+     * Retrieves several entities from the JSON file.
+     *
+     * @param keys the primary keys of the entities
+     * @return the entities found, by primary key
+     */
+    @Override
+    public synchronized Map<String, E> getEntities(Collection<String> keys) {
+        long start = metrics.start(file.getName(), OperationMetrics.GET_MANY);
+        long now = System.currentTimeMillis();
+        Map<String, E> entities = new HashMap<>();
+        for (String key : keys) {
+            E entity = expiries.isExpired(key, now) ? null : data.get(key);
+            if (entity != null) {
+                entities.put(key, entity);
+            }
+        }
+        metrics.count(file.getName(), OperationMetrics.ROWS_READ, entities.size());
+        metrics.stop(file.getName(), OperationMetrics.GET_MANY, start);
+        return entities;
+    }
+
+    /**
+     * Retrieves a page of entities ordered by primary key using the sorted key index.
+     * Seeking to {@code afterKey} is logarithmic, so every page costs the same regardless of depth.
+     *
+     * @param afterKey the primary key to continue after, or null for the first page
+     * @param limit the maximum number of entities to return
+     * @return the page of entities
+     */
+    @Override
+    public synchronized Page<E> page(String afterKey, int limit) {
+        if (limit <= 0) {
+            return new Page<>(List.of(), null);
+        }
+        long start = metrics.start(file.getName(), OperationMetrics.PAGE);
+        long now = System.currentTimeMillis();
+        NavigableSet<String> tail = afterKey == null ? keyIndex : keyIndex.tailSet(afterKey, false);
+        List<E> entities = new ArrayList<>();
+        String lastKey = null;
+        for (String key : tail) {
+            if (entities.size() >= limit) {
+                break;
+            }
+            if (expiries.isExpired(key, now)) {
+                continue;
+            }
+            entities.add(data.get(key));
+            lastKey = key;
+        }
+        metrics.count(file.getName(), OperationMetrics.ROWS_READ, entities.size());
+        metrics.stop(file.getName(), OperationMetrics.PAGE, start);
+        return new Page<>(entities, entities.size() == limit ? lastKey : null);
     }
 
     /**
@@ -99,9 +492,381 @@ public class JSONDatabase<E> implements Database<E> {
      *
      * @param key the primary key of the entity to delete
      */
-    public void deleteEntity(String key) {
-        data.remove(key);
+    @Override
+    public synchronized void deleteEntity(String key) {
+        long start = metrics.start(file.getName(), OperationMetrics.DELETE);
+        if (expiries.cancel(key)) {
+            expiriesChanged = true;
+        }
+        if (discard(key)) {
+            metrics.count(file.getName(), OperationMetrics.ROWS_WRITTEN, 1);
+        }
+        saveData();
+        metrics.stop(file.getName(), OperationMetrics.DELETE, start);
+        publish(ChangeType.DELETE, key, null);
+    }
+
+    /**
+     * Sets the recorder that receives operation metrics.
+     *
+     * @param recorder the metrics recorder, or null to disable metrics
+     */
+    @Override
+    public void setMetricsRecorder(MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("json", recorder);
+    }
+
+    /**
+     * Subscribes to saves and deletes made through this instance. Changes made by other processes
+     * to the same file are not seen.
+     *
+     * @param listener the listener, called on the change feed thread
+     * @return the subscription
+     */
+    @Override
+    public ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        return changeFeed.subscribe(listener);
+    }
+
+    /**
+     * Builds the Gson type adapters of the entity class ahead of the first save. All entities are
+     * already in memory.
+     */
+    @Override
+    public void prime() {
+        long start = metrics.start(file.getName(), OperationMetrics.PRIME);
+        gson.getAdapter(TypeToken.get(type));
+        metrics.stop(file.getName(), OperationMetrics.PRIME, start);
+    }
+
+    /**
+     * Writes all entities to the target, so the snapshot can be opened as a JSONDatabase. Deadlines
+     * of entities with a time to live go to a {@code .ttl} file next to it. The snapshot is a copy
+     * of the data file, which is only linked under the lock and copied without it. If the last
+     * write of the file failed, the entities are serialized under the lock instead.
+     *
+     * @param target the snapshot file
+     * @return the report
+     * @throws IOException if the snapshot could not be written
+     */
+    @Override
+    public SnapshotReport snapshot(Path target) throws IOException {
+        long start = System.nanoTime();
+        Path pinned = null;
+        JsonElement serialized = null;
+        int rows;
+        Map<String, Long> deadlines;
+        Set<String> previousChanges;
+        synchronized (this) {
+            if (fileStale || !file.exists()) {
+                serialized = gson.toJsonTree(data, type);
+            } else {
+                pinned = pinFile();
+            }
+            rows = data.size();
+            deadlines = expiries.getDeadlines();
+            previousChanges = changedSinceSnapshot;
+            changedSinceSnapshot = new HashSet<>();
+        }
+        try {
+            if (pinned == null) {
+                JsonElement content = serialized;
+                writeAtomically(target, writer -> gson.toJson(content, writer));
+            } else {
+                copyAtomically(pinned, target);
+            }
+            writeDeadlines(target.resolveSibling(target.getFileName() + ".ttl"), deadlines);
+        } catch (IOException e) {
+            restoreChanges(previousChanges, previousChanges == null);
+            throw e;
+        } finally {
+            if (pinned != null) {
+                Files.deleteIfExists(pinned);
+            }
+        }
+        return new SnapshotReport(target, false, rows, 0, Files.size(target), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Writes the entities saved and the keys deleted since the previous snapshot as a JSON object
+     * with {@code saved}, {@code deleted} and {@code deadlines} members, in this database's format.
+     *
+     * @param target the snapshot file
+     * @return the report
+     * @throws IOException if the snapshot could not be written
+     * @throws IllegalStateException if no full snapshot was taken by this instance yet
+     */
+    @Override
+    public SnapshotReport incrementalSnapshot(Path target) throws IOException {
+        long start = System.nanoTime();
+        Map<String, JsonElement> saved = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+        Map<String, Long> deadlines = new HashMap<>();
+        Set<String> changes;
+        synchronized (this) {
+            if (changedSinceSnapshot == null) {
+                throw new IllegalStateException("Take a full snapshot of " + file + " before an incremental one");
+            }
+            changes = changedSinceSnapshot;
+            changedSinceSnapshot = new HashSet<>();
+            for (String key : changes) {
+                E entity = data.get(key);
+                if (entity == null) {
+                    deleted.add(key);
+                    continue;
+                }
+                saved.put(key, gson.toJsonTree(entity));
+                Long deadline = expiries.getDeadline(key);
+                if (deadline != null) {
+                    deadlines.put(key, deadline);
+                }
+            }
+        }
+        try {
+            writeAtomically(target, writer -> {
+                JsonWriter json = gson.newJsonWriter(writer);
+                json.beginObject();
+                json.name("saved");
+                gson.toJson(saved, DOCUMENTS_TYPE, json);
+                json.name("deleted");
+                gson.toJson(deleted, List.class, json);
+                json.name("deadlines");
+                gson.toJson(deadlines, Map.class, json);
+                json.endObject();
+                json.flush();
+            });
+        } catch (IOException e) {
+            restoreChanges(changes, false);
+            throw e;
+        }
+        return new SnapshotReport(target, true, saved.size(), deleted.size(), Files.size(target), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Applies an incremental snapshot written by {@link #incrementalSnapshot(Path)} and writes the file once.
+     *
+     * @param snapshot the incremental snapshot file
+     * @throws IOException if the snapshot could not be read
+     */
+    @Override
+    public synchronized void applyIncrementalSnapshot(Path snapshot) throws IOException {
+        JsonObject delta;
+        try (Reader reader = openReader(snapshot.toFile())) {
+            delta = gson.fromJson(reader, JsonObject.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid incremental snapshot " + snapshot, e);
+        }
+        JsonObject saved = delta.getAsJsonObject("saved");
+        List<String> deleted = gson.fromJson(delta.get("deleted"), TypeToken.getParameterized(List.class, String.class).getType());
+        Map<String, Long> deadlines = gson.fromJson(delta.get("deadlines"), TypeToken.getParameterized(HashMap.class, String.class, Long.class).getType());
+        for (Map.Entry<String, JsonElement> entry : saved.entrySet()) {
+            String key = entry.getKey();
+            E entity = gson.fromJson(entry.getValue(), entityClass);
+            store(key, entity);
+            expiries.cancel(key);
+            Long deadline = deadlines == null ? null : deadlines.get(key);
+            if (deadline != null) {
+                expiries.schedule(key, deadline);
+                startSweeper();
+            }
+            publish(ChangeType.SAVE, key, entity);
+        }
+        for (String key : deleted) {
+            discard(key);
+            expiries.cancel(key);
+            publish(ChangeType.DELETE, key, null);
+        }
+        expiriesChanged = true;
+        saveData();
+    }
+
+    /**
+     * Stops the expiry sweeper and the change feed. Expired entities stay in the file until the
+     * next instance sweeps them.
+     */
+    public synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        changeFeed.close();
+    }
+
+    /**
+     * Starts the expiry sweeper if it is not running yet.
+     */
+    private void startSweeper() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "json-expiry-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = expiries.getTickMillis();
+        sweeper.scheduleWithFixedDelay(this::sweep, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes the entities whose deadlines passed in the ticks elapsed since the last sweep, at
+     * most {@link #SWEEP_BATCH_SIZE} at a time, and writes the file once.
+     */
+    private synchronized void sweep() {
+        List<String> expired = expiries.advance(System.currentTimeMillis(), SWEEP_BATCH_SIZE);
+        if (expired.isEmpty()) {
+            return;
+        }
+        long start = metrics.start(file.getName(), OperationMetrics.SWEEP);
+        for (String key : expired) {
+            discard(key);
+            publish(ChangeType.DELETE, key, null);
+        }
+        expiriesChanged = true;
         saveData();
+        metrics.count(file.getName(), OperationMetrics.EXPIRED, expired.size());
+        metrics.stop(file.getName(), OperationMetrics.SWEEP, start);
+    }
+
+    /**
+     * Writes a file in this database's format next to the target and moves it into place.
+     *
+     * @param target the file to write
+     * @param content writes the content
+     * @throws IOException if the file could not be written
+     */
+    private void writeAtomically(Path target, SnapshotContent content) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Writer writer = openWriter(temporary.toFile())) {
+            content.write(writer);
+        } catch (JsonIOException e) {
+            // Gson wraps the I/O errors of the underlying writer
+            throw new IOException("Could not write " + target, e.getCause());
+        }
+        force(temporary);
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Flushes a written file to the storage device, so the move that follows cannot replace the
+     * old file with one whose content is still only in the page cache when the system crashes.
+     *
+     * @param written the file
+     * @throws IOException if the file could not be flushed
+     */
+    private static void force(Path written) throws IOException {
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Stores an entity.
+     *
+     * @param key the primary key of the entity
+     * @param entity the entity
+     */
+    private void store(String key, E entity) {
+        data.put(key, entity);
+        keyIndex.add(key);
+        markChanged(key);
+    }
+
+    /**
+     * Removes an entity.
+     *
+     * @param key the primary key of the entity
+     * @return true if the entity was stored
+     */
+    private boolean discard(String key) {
+        keyIndex.remove(key);
+        markChanged(key);
+        return data.remove(key) != null;
+    }
+
+    /**
+     * Gives the current data file a second name next to it, which keeps its content when the next
+     * write moves a new file into place. Falls back to a copy where hard links are not supported.
+     *
+     * @return the second name, to be deleted once the content was copied
+     * @throws IOException if neither a link nor a copy could be made
+     */
+    private Path pinFile() throws IOException {
+        Path source = file.toPath();
+        Path pinned = source.resolveSibling(file.getName() + ".snapshot-" + snapshotLinks.incrementAndGet());
+        try {
+            Files.createLink(pinned, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, pinned, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return pinned;
+    }
+
+    /**
+     * Copies a file next to the target, flushes it and moves it into place.
+     *
+     * @param source the file to copy
+     * @param target the file to write
+     * @throws IOException if the file could not be copied
+     */
+    private void copyAtomically(Path source, Path target) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+        force(temporary);
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remembers that a key changed since the last snapshot, once a snapshot was taken.
+     *
+     * @param key the primary key of the entity
+     */
+    private void markChanged(String key) {
+        if (changedSinceSnapshot != null) {
+            changedSinceSnapshot.add(key);
+        }
+    }
+
+    /**
+     * Puts back the changes a failed snapshot took, so the next incremental snapshot still covers them.
+     *
+     * @param changes the changes taken by the snapshot, or null if there were none
+     * @param untracked whether no snapshot existed before, so changes are not tracked again
+     */
+    private synchronized void restoreChanges(Set<String> changes, boolean untracked) {
+        if (untracked) {
+            changedSinceSnapshot = null;
+        } else if (changes != null) {
+            changedSinceSnapshot.addAll(changes);
+        }
+    }
+
+    /**
+     * Writes the content of a snapshot file.
+     */
+    @FunctionalInterface
+    private interface SnapshotContent {
+
+        /**
+         * Writes the content.
+         *
+         * @param writer the writer
+         * @throws IOException if writing failed
+         */
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * Publishes a change to the subscribers, if there are any.
+     *
+     * @param type the kind of change
+     * @param key the primary key of the entity
+     * @param entity the entity after a save, or null
+     */
+    private void publish(ChangeType type, String key, E entity) {
+        if (changeFeed.hasSubscribers()) {
+            changeFeed.publish(new ChangeEvent<>(type, key, entity, Instant.now()));
+        }
     }
 
     /**
@@ -115,7 +880,11 @@ public class JSONDatabase<E> implements Database<E> {
         for (Field field : clazz.getDeclaredFields()) {
             if (field.isAnnotationPresent(PrimaryKey.class)) {
                 field.setAccessible(true);
-                return field.getName();
+                try {
+                    return String.valueOf(field.get(entity));
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                }
             }
         }
         throw new IllegalArgumentException("No field annotated with @PrimaryKey found in entity class");
@@ -0,0 +1,18 @@
+package dev.mzcy.database.nosql;
+
+/**
+ * On-disk format of a {@link JSONDatabase} file. Files are recognized on load regardless of the
+ * configured format, so changing it migrates a file on the next save.
+ */
+public enum JSONStorageFormat {
+
+    /** Indented JSON, easy to read and edit by hand. */
+    PRETTY,
+
+    /** JSON without whitespace. */
+    COMPACT,
+
+    /** Compact JSON in checksummed Deflate blocks, see {@link dev.mzcy.database.nosql.format.BlockCompressedOutputStream}. */
+    COMPRESSED
+
+}
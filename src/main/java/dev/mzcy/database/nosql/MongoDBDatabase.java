@@ -1,18 +1,50 @@
 package dev.mzcy.database.nosql;
 
+import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
 import dev.mzcy.database.Database;
+import dev.mzcy.database.Page;
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeFeed;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.change.ChangeType;
 import dev.mzcy.database.credentials.DatabaseCredentials;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
 import dev.mzcy.database.nosql.annotation.PrimaryKey;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Implementation of the Database interface for MongoDB.
+ * <p>
+ * Entities saved with a time to live carry their deadline in an {@value #EXPIRES_AT_FIELD} field
+ * covered by a native TTL index, so the server removes them in the background. Reads filter on
+ * the deadline as well, since the server only sweeps about once a minute.
  *
  * @param <E> the type of the entity
  */
@@ -20,10 +52,20 @@ import java.lang.reflect.Field;
 @FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
 public class MongoDBDatabase<E> implements Database<E> {
 
+    /** The document field holding the expiry deadline of entities saved with a time to live. */
+    public static final String EXPIRES_AT_FIELD = "_expiresAt";
+
     MongoClient mongoClient;
     MongoDatabase database;
     MongoCollection<Document> collection;
     Class<E> entityClass;
+    ChangeFeed<E> changeFeed;
+    @NonFinal
+    OperationMetrics metrics;
+    @NonFinal
+    Thread changeStreamWatcher;
+    @NonFinal
+    volatile boolean ttlIndexCreated;
 
     /**
      * Constructs a MongoDBDatabase instance.
@@ -34,10 +76,25 @@ public class MongoDBDatabase<E> implements Database<E> {
      * @param entityClass the class of the entity
      */
     public MongoDBDatabase(DatabaseCredentials databaseCredentials, String databaseName, String collectionName, Class<E> entityClass) {
+        this(databaseCredentials, databaseName, collectionName, entityClass, MetricsRecorder.NOOP);
+    }
+
+    /**
+     * Constructs a MongoDBDatabase instance that reports to the given metrics recorder.
+     *
+     * @param databaseCredentials the credentials for the database
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param entityClass the class of the entity
+     * @param recorder the metrics recorder
+     */
+    public MongoDBDatabase(DatabaseCredentials databaseCredentials, String databaseName, String collectionName, Class<E> entityClass, MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("mongodb", recorder);
         this.mongoClient = MongoClients.create(databaseCredentials.getConnectionUrl());
         this.database = mongoClient.getDatabase(databaseName);
         this.collection = database.getCollection(collectionName);
         this.entityClass = entityClass;
+        this.changeFeed = new ChangeFeed<>("mongodb-changes-" + collectionName);
     }
 
     /**
@@ -47,16 +104,54 @@ public class MongoDBDatabase<E> implements Database<E> {
      */
     @Override
     public void save(E entity) {
-        Document document = new Document();
+        save(entity, (Date) null);
+    }
+
+    /**
+     * Saves the provided entity to the MongoDB collection. The TTL index removes it once the time
+     * to live ran out; until then reads already treat it as absent.
+     *
+     * @param entity the entity to save
+     * @param ttl the time to live
+     */
+    @Override
+    public void save(E entity, Duration ttl) {
+        ensureTtlIndex();
+        save(entity, new Date(System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    /**
+     * Replaces the document of an entity, upserting it.
+     *
+     * @param entity the entity to save
+     * @param expiresAt the expiry deadline, or null for none
+     */
+    private void save(E entity, Date expiresAt) {
+        String table = collection.getNamespace().getCollectionName();
+        long start = metrics.start(table, OperationMetrics.SAVE);
+        String key = getKey(entity);
+        Document document = new Document("_id", key);
         for (Field field : entity.getClass().getDeclaredFields()) {
             field.setAccessible(true);
             try {
                 document.append(field.getName(), field.get(entity));
             } catch (IllegalAccessException e) {
+                metrics.error(table, OperationMetrics.SAVE);
                 e.printStackTrace();
             }
         }
-        collection.insertOne(document);
+        if (expiresAt != null) {
+            document.append(EXPIRES_AT_FIELD, expiresAt);
+        }
+        try {
+            collection.replaceOne(Filters.eq("_id", key), document, new ReplaceOptions().upsert(true));
+            metrics.count(table, OperationMetrics.ROWS_WRITTEN, 1);
+        } catch (MongoException e) {
+            metrics.error(table, OperationMetrics.SAVE);
+            throw e;
+        } finally {
+            metrics.stop(table, OperationMetrics.SAVE, start);
+        }
     }
 
     /**
@@ -67,21 +162,87 @@ public class MongoDBDatabase<E> implements Database<E> {
      */
     @Override
     public E getEntity(String key) {
-        Document document = collection.find(Filters.eq("_id", key)).first();
-        if (document == null) {
-            return null;
+        String table = collection.getNamespace().getCollectionName();
+        long start = metrics.start(table, OperationMetrics.GET);
+        try {
+            Document document = collection.find(Filters.and(Filters.eq("_id", key), notExpired())).first();
+            if (document == null) {
+                return null;
+            }
+            metrics.count(table, OperationMetrics.ROWS_READ, 1);
+            return toEntity(document);
+        } catch (MongoException e) {
+            metrics.error(table, OperationMetrics.GET);
+            throw e;
+        } finally {
+            metrics.stop(table, OperationMetrics.GET, start);
+        }
+    }
+
+    /**
+     * Retrieves several entities from the MongoDB collection with a single {@code $in} query.
+     *
+     * @param keys the primary keys of the entities
+     * @return the entities found, by primary key
+     */
+    @Override
+    public Map<String, E> getEntities(Collection<String> keys) {
+        Map<String, E> entities = new HashMap<>();
+        if (keys.isEmpty()) {
+            return entities;
         }
+        String table = collection.getNamespace().getCollectionName();
+        long start = metrics.start(table, OperationMetrics.GET_MANY);
         try {
-            E entity = entityClass.getDeclaredConstructor().newInstance();
-            for (Field field : entityClass.getDeclaredFields()) {
-                field.setAccessible(true);
-                field.set(entity, document.get(field.getName()));
+            for (Document document : collection.find(Filters.and(Filters.in("_id", keys), notExpired()))) {
+                E entity = toEntity(document);
+                if (entity != null) {
+                    entities.put(String.valueOf(document.get("_id")), entity);
+                }
             }
-            return entity;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        } catch (MongoException e) {
+            metrics.error(table, OperationMetrics.GET_MANY);
+            throw e;
+        } finally {
+            metrics.count(table, OperationMetrics.ROWS_READ, entities.size());
+            metrics.stop(table, OperationMetrics.GET_MANY, start);
+        }
+        return entities;
+    }
+
+    /**
+     * Retrieves a page of entities ordered by {@code _id}. The {@code _id > afterKey} range is
+     * resolved by the default {@code _id} index, so every page costs the same regardless of depth.
+     *
+     * @param afterKey the primary key to continue after, or null for the first page
+     * @param limit the maximum number of entities to return
+     * @return the page of entities
+     */
+    @Override
+    public Page<E> page(String afterKey, int limit) {
+        if (limit <= 0) {
+            // A limit of zero means "no limit" to MongoDB
+            return new Page<>(List.of(), null);
         }
+        String table = collection.getNamespace().getCollectionName();
+        long start = metrics.start(table, OperationMetrics.PAGE);
+        FindIterable<Document> documents = afterKey == null ? collection.find(notExpired())
+                : collection.find(Filters.and(Filters.gt("_id", afterKey), notExpired()));
+        List<E> entities = new ArrayList<>();
+        String lastKey = null;
+        try {
+            for (Document document : documents.sort(Sorts.ascending("_id")).limit(limit)) {
+                entities.add(toEntity(document));
+                lastKey = String.valueOf(document.get("_id"));
+            }
+        } catch (MongoException e) {
+            metrics.error(table, OperationMetrics.PAGE);
+            throw e;
+        } finally {
+            metrics.count(table, OperationMetrics.ROWS_READ, entities.size());
+            metrics.stop(table, OperationMetrics.PAGE, start);
+        }
+        return new Page<>(entities, entities.size() == limit ? lastKey : null);
     }
 
     /**
@@ -89,17 +250,187 @@ public class MongoDBDatabase<E> implements Database<E> {
      *
      * @param key the primary key of the entity to delete
      */
+    @Override
     public void deleteEntity(String key) {
-        collection.deleteOne(Filters.eq("_id", key));
+        String table = collection.getNamespace().getCollectionName();
+        long start = metrics.start(table, OperationMetrics.DELETE);
+        try {
+            metrics.count(table, OperationMetrics.ROWS_WRITTEN, collection.deleteOne(Filters.eq("_id", key)).getDeletedCount());
+        } catch (MongoException e) {
+            metrics.error(table, OperationMetrics.DELETE);
+            throw e;
+        } finally {
+            metrics.stop(table, OperationMetrics.DELETE, start);
+        }
     }
 
     /**
-     * Closes the MongoDB client connection.
+     * Sets the recorder that receives operation metrics.
+     *
+     * @param recorder the metrics recorder, or null to disable metrics
+     */
+    @Override
+    public void setMetricsRecorder(MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("mongodb", recorder);
+    }
+
+    /**
+     * Subscribes to saves and deletes of the collection, made by any client. Changes are read from
+     * a MongoDB change stream, which requires a replica set or sharded cluster. The stream is
+     * opened with the first subscription and resumes after errors where it left off.
+     *
+     * @param listener the listener, called on the change feed thread
+     * @return the subscription
+     */
+    @Override
+    public synchronized ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        ChangeSubscription subscription = changeFeed.subscribe(listener);
+        if (changeStreamWatcher == null) {
+            changeStreamWatcher = new Thread(this::watchChanges, "mongodb-change-stream-" + collection.getNamespace().getCollectionName());
+            changeStreamWatcher.setDaemon(true);
+            changeStreamWatcher.start();
+        }
+        return subscription;
+    }
+
+    /**
+     * Opens a pooled connection to the server ahead of the first request, and checks that the
+     * entity class can be instantiated.
+     */
+    @Override
+    public void prime() {
+        String table = collection.getNamespace().getCollectionName();
+        long start = metrics.start(table, OperationMetrics.PRIME);
+        try {
+            database.runCommand(new Document("ping", 1));
+            entityClass.getDeclaredConstructor();
+        } catch (MongoException | NoSuchMethodException e) {
+            metrics.error(table, OperationMetrics.PRIME);
+            e.printStackTrace();
+        } finally {
+            metrics.stop(table, OperationMetrics.PRIME, start);
+        }
+    }
+
+    /**
+     * Closes the change stream and the MongoDB client connection.
      */
     public void close() {
+        synchronized (this) {
+            if (changeStreamWatcher != null) {
+                changeStreamWatcher.interrupt();
+                changeStreamWatcher = null;
+            }
+        }
+        changeFeed.close();
         mongoClient.close();
     }
 
+    /**
+     * Reads the change stream of the collection and publishes its events until interrupted.
+     */
+    private void watchChanges() {
+        BsonDocument resumeToken = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            ChangeStreamIterable<Document> stream = collection.watch().fullDocument(FullDocument.UPDATE_LOOKUP);
+            if (resumeToken != null) {
+                stream = stream.resumeAfter(resumeToken);
+            }
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change == null) {
+                        continue;
+                    }
+                    resumeToken = change.getResumeToken();
+                    ChangeEvent<E> event = toChangeEvent(change);
+                    if (event != null) {
+                        changeFeed.publish(event);
+                    }
+                }
+            } catch (MongoException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                e.printStackTrace();
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a change stream document to a change event.
+     *
+     * @param change the change stream document
+     * @return the event, or null for operations that do not change a single entity
+     */
+    private ChangeEvent<E> toChangeEvent(ChangeStreamDocument<Document> change) {
+        BsonDocument documentKey = change.getDocumentKey();
+        if (documentKey == null) {
+            return null;
+        }
+        BsonValue id = documentKey.get("_id");
+        String key = id.isString() ? id.asString().getValue() : id.toString();
+        Instant timestamp;
+        if (change.getWallTime() != null) {
+            timestamp = Instant.ofEpochMilli(change.getWallTime().getValue());
+        } else if (change.getClusterTime() != null) {
+            timestamp = Instant.ofEpochSecond(change.getClusterTime().getTime());
+        } else {
+            timestamp = Instant.now();
+        }
+        return switch (change.getOperationType()) {
+            case INSERT, REPLACE, UPDATE -> new ChangeEvent<>(ChangeType.SAVE, key,
+                    change.getFullDocument() == null ? null : toEntity(change.getFullDocument()), timestamp);
+            case DELETE -> new ChangeEvent<>(ChangeType.DELETE, key, null, timestamp);
+            default -> null;
+        };
+    }
+
+    /**
+     * Creates the TTL index on {@value #EXPIRES_AT_FIELD} once. Creating an existing index is a no-op on the server.
+     */
+    private void ensureTtlIndex() {
+        if (ttlIndexCreated) {
+            return;
+        }
+        collection.createIndex(Indexes.ascending(EXPIRES_AT_FIELD), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+        ttlIndexCreated = true;
+    }
+
+    /**
+     * Builds a filter matching documents without a deadline or with a deadline in the future.
+     *
+     * @return the filter
+     */
+    private Bson notExpired() {
+        return Filters.or(Filters.exists(EXPIRES_AT_FIELD, false), Filters.gt(EXPIRES_AT_FIELD, new Date()));
+    }
+
+    /**
+     * Maps a document to a new entity instance.
+     *
+     * @param document the document
+     * @return the entity, or null if it could not be created
+     */
+    private E toEntity(Document document) {
+        try {
+            E entity = entityClass.getDeclaredConstructor().newInstance();
+            for (Field field : entityClass.getDeclaredFields()) {
+                field.setAccessible(true);
+                field.set(entity, document.get(field.getName()));
+            }
+            return entity;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Gets the primary key of the entity.
      *
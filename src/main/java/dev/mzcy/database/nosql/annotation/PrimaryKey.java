@@ -1,8 +1,15 @@
 package dev.mzcy.database.nosql.annotation;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 /**
  * Primary key annotation. Use this annotation to mark a field as primary key.
  */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
 public @interface PrimaryKey {
 
 }
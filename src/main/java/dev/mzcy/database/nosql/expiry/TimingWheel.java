@@ -0,0 +1,172 @@
+package dev.mzcy.database.nosql.expiry;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashed timing wheel that tracks the expiry deadlines of keys. Time is cut into ticks; a key
+ * lives in the slot of the tick its deadline falls into, modulo the number of slots. Scheduling
+ * and cancelling are constant time, and {@link #advance(long, int)} only visits the slots of the
+ * ticks that elapsed since the last call, so expiry work is spread evenly over time instead of
+ * scanning every key.
+ * <p>
+ * A key that is rescheduled stays in its old slot until that slot is visited; it is then
+ * recognised as stale against the deadline map and dropped.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class TimingWheel {
+
+    /** Default length of a tick. */
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+
+    /** Default number of slots, so one revolution covers a bit over eight minutes. */
+    public static final int DEFAULT_SLOTS = 512;
+
+    @Getter
+    long tickMillis;
+    List<Set<String>> slots;
+    Map<String, Long> deadlines = new HashMap<>();
+    @NonFinal
+    long cursor;
+
+    /**
+     * Constructs a TimingWheel instance.
+     *
+     * @param tickMillis the length of a tick in milliseconds
+     * @param slots the number of slots
+     * @param now the current time in milliseconds
+     */
+    public TimingWheel(long tickMillis, int slots, long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            this.slots.add(new LinkedHashSet<>());
+        }
+        this.cursor = now / tickMillis;
+    }
+
+    /**
+     * Constructs a TimingWheel instance with the default tick length and slot count.
+     *
+     * @param now the current time in milliseconds
+     */
+    public TimingWheel(long now) {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_SLOTS, now);
+    }
+
+    /**
+     * Schedules a key to expire at the given deadline, replacing an earlier deadline.
+     *
+     * @param key the key
+     * @param deadline the deadline in milliseconds since the epoch
+     */
+    public synchronized void schedule(String key, long deadline) {
+        deadlines.put(key, deadline);
+        slots.get(slot(Math.max(deadline / tickMillis, cursor))).add(key);
+    }
+
+    /**
+     * Cancels the expiry of a key.
+     *
+     * @param key the key
+     * @return true if the key was scheduled
+     */
+    public synchronized boolean cancel(String key) {
+        return deadlines.remove(key) != null;
+    }
+
+    /**
+     * Checks if a key passed its deadline, even if {@link #advance(long, int)} has not reached it yet.
+     *
+     * @param key the key
+     * @param now the current time in milliseconds
+     * @return true if the key is scheduled and expired, false otherwise
+     */
+    public synchronized boolean isExpired(String key, long now) {
+        Long deadline = deadlines.get(key);
+        return deadline != null && deadline <= now;
+    }
+
+    /**
+     * Gets the deadline of a key.
+     *
+     * @param key the key
+     * @return the deadline in milliseconds since the epoch, or null if the key is not scheduled
+     */
+    public synchronized Long getDeadline(String key) {
+        return deadlines.get(key);
+    }
+
+    /**
+     * Gets a copy of all scheduled deadlines.
+     *
+     * @return the deadlines in milliseconds since the epoch, by key
+     */
+    public synchronized Map<String, Long> getDeadlines() {
+        return new HashMap<>(deadlines);
+    }
+
+    /**
+     * Gets the number of scheduled keys.
+     *
+     * @return the number of keys
+     */
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Visits the slots of all ticks that fully elapsed and removes the keys that expired. Stops
+     * early once {@code maxExpired} keys were collected; the next call continues where this one
+     * stopped.
+     *
+     * @param now the current time in milliseconds
+     * @param maxExpired the maximum number of keys to return
+     * @return the expired keys, no longer scheduled
+     */
+    public synchronized List<String> advance(long now, int maxExpired) {
+        List<String> expired = new ArrayList<>();
+        long currentTick = now / tickMillis;
+        while (cursor < currentTick) {
+            Iterator<String> iterator = slots.get(slot(cursor)).iterator();
+            while (iterator.hasNext()) {
+                if (expired.size() >= maxExpired) {
+                    return expired;
+                }
+                String key = iterator.next();
+                Long deadline = deadlines.get(key);
+                if (deadline == null) {
+                    iterator.remove();
+                } else if (deadline <= now) {
+                    iterator.remove();
+                    deadlines.remove(key);
+                    expired.add(key);
+                } else if (slot(deadline / tickMillis) != slot(cursor)) {
+                    // Rescheduled into another slot
+                    iterator.remove();
+                }
+            }
+            cursor++;
+        }
+        return expired;
+    }
+
+    /**
+     * Maps a tick to its slot.
+     *
+     * @param tick the tick
+     * @return the slot index
+     */
+    private int slot(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.size());
+    }
+}
@@ -0,0 +1,181 @@
+package dev.mzcy.database.nosql.format;
+
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream that decodes the block-compressed format described in {@link BlockFormat} one
+ * block at a time. Every block is verified against its checksum, and a missing trailer is
+ * reported, so corrupted or truncated files raise a {@link CorruptedDataException}.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class BlockCompressedInputStream extends InputStream {
+
+    DataInputStream in;
+    Inflater inflater = new Inflater();
+    CRC32 crc = new CRC32();
+    @NonFinal
+    byte[] block = new byte[BlockFormat.DEFAULT_BLOCK_SIZE];
+    @NonFinal
+    byte[] compressed = new byte[BlockFormat.DEFAULT_BLOCK_SIZE];
+    @NonFinal
+    int length;
+    @NonFinal
+    int position;
+    @NonFinal
+    int blocks;
+    @NonFinal
+    boolean finished;
+
+    /**
+     * Constructs a BlockCompressedInputStream instance and verifies the file header.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the header is missing or of an unknown version
+     */
+    public BlockCompressedInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[BlockFormat.MAGIC.length];
+        try {
+            this.in.readFully(magic);
+            int version = this.in.readUnsignedByte();
+            if (version != BlockFormat.VERSION) {
+                throw new IOException("Unsupported block format version " + version);
+            }
+        } catch (EOFException e) {
+            throw new CorruptedDataException("Missing block format header");
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != BlockFormat.MAGIC[i]) {
+                throw new CorruptedDataException("Missing block format header");
+            }
+        }
+    }
+
+    /**
+     * Checks if a stream starts with the block-compressed signature. The stream must support
+     * mark and reset; it is reset to where it was.
+     *
+     * @param in the stream
+     * @return true if the stream is block-compressed, false otherwise
+     * @throws IOException if the stream could not be read
+     */
+    public static boolean isBlockCompressed(InputStream in) throws IOException {
+        return BlockFormat.isBlockCompressed(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int chunk = Math.min(count, length - position);
+        System.arraycopy(block, position, bytes, offset, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Decodes the next block if the current one is consumed.
+     *
+     * @return true if data is available, false at the end of the stream
+     * @throws IOException if the next block is corrupted or missing
+     */
+    private boolean fill() throws IOException {
+        while (position == length) {
+            if (finished) {
+                return false;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    /**
+     * Reads, inflates and verifies the next block.
+     *
+     * @throws IOException if the block is corrupted or missing
+     */
+    private void readBlock() throws IOException {
+        int rawLength;
+        int compressedLength;
+        int checksum;
+        try {
+            rawLength = in.readInt();
+            compressedLength = in.readInt();
+            checksum = in.readInt();
+        } catch (EOFException e) {
+            throw new CorruptedDataException("Truncated file: missing trailer after block " + blocks);
+        }
+        if (rawLength == 0 && compressedLength == 0) {
+            if (checksum != blocks) {
+                throw new CorruptedDataException("Trailer expects " + checksum + " blocks but found " + blocks);
+            }
+            finished = true;
+            length = 0;
+            position = 0;
+            return;
+        }
+        if (rawLength < 0 || compressedLength < 0 || rawLength > BlockFormat.MAX_BLOCK_SIZE || compressedLength > BlockFormat.MAX_BLOCK_SIZE) {
+            throw new CorruptedDataException("Invalid block header after block " + blocks);
+        }
+        if (block.length < rawLength) {
+            block = new byte[rawLength];
+        }
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        try {
+            in.readFully(compressed, 0, compressedLength);
+        } catch (EOFException e) {
+            throw new CorruptedDataException("Truncated file: block " + blocks + " is incomplete");
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        int inflated = 0;
+        try {
+            while (inflated < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(block, inflated, rawLength - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new CorruptedDataException("Block " + blocks + " is not valid Deflate data");
+        }
+        crc.reset();
+        crc.update(block, 0, inflated);
+        if (inflated != rawLength || (int) crc.getValue() != checksum) {
+            throw new CorruptedDataException("Checksum mismatch in block " + blocks);
+        }
+        length = rawLength;
+        position = 0;
+        blocks++;
+    }
+}
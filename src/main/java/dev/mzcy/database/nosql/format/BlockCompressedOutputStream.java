@@ -0,0 +1,117 @@
+package dev.mzcy.database.nosql.format;
+
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that writes the block-compressed format described in {@link BlockFormat}.
+ * Data is buffered up to the block size, then Deflate-compressed and written with its checksum.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class BlockCompressedOutputStream extends OutputStream {
+
+    DataOutputStream out;
+    Deflater deflater;
+    CRC32 crc = new CRC32();
+    byte[] block;
+    byte[] compressed;
+    @NonFinal
+    int length;
+    @NonFinal
+    int blocks;
+    @NonFinal
+    boolean closed;
+
+    /**
+     * Constructs a BlockCompressedOutputStream instance and writes the file header.
+     *
+     * @param out the stream to write to
+     * @param level the Deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @throws IOException if the header could not be written
+     */
+    public BlockCompressedOutputStream(OutputStream out, int level) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.deflater = new Deflater(level);
+        this.block = new byte[BlockFormat.DEFAULT_BLOCK_SIZE];
+        // Deflate may expand incompressible data slightly
+        this.compressed = new byte[BlockFormat.DEFAULT_BLOCK_SIZE + BlockFormat.DEFAULT_BLOCK_SIZE / 16 + 64];
+        this.out.write(BlockFormat.MAGIC);
+        this.out.writeByte(BlockFormat.VERSION);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            writeBlock();
+        }
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (length == block.length) {
+                writeBlock();
+            }
+            int chunk = Math.min(count, block.length - length);
+            System.arraycopy(bytes, offset, block, length, chunk);
+            length += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Writes the pending block and the trailer, then closes the underlying stream.
+     *
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (length > 0) {
+                writeBlock();
+            }
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(blocks);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Compresses and writes the buffered block.
+     *
+     * @throws IOException if writing failed
+     */
+    private void writeBlock() throws IOException {
+        crc.reset();
+        crc.update(block, 0, length);
+        deflater.reset();
+        deflater.setInput(block, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        out.writeInt(length);
+        out.writeInt(compressedLength);
+        out.writeInt((int) crc.getValue());
+        out.write(compressed, 0, compressedLength);
+        length = 0;
+        blocks++;
+    }
+}
@@ -0,0 +1,55 @@
+package dev.mzcy.database.nosql.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Layout of the block-compressed file format shared by {@link BlockCompressedOutputStream} and
+ * {@link BlockCompressedInputStream}.
+ * <p>
+ * A file starts with {@link #MAGIC} and a version byte, followed by blocks. Every block has a
+ * header of three big-endian ints, the uncompressed length, the compressed length and the CRC32
+ * of the uncompressed bytes, followed by the Deflate-compressed bytes. The stream ends with a
+ * trailer block whose lengths are zero and whose checksum field holds the number of data blocks,
+ * so a file cut off at a block boundary is detected as well.
+ */
+final class BlockFormat {
+
+    /** File signature. */
+    static final byte[] MAGIC = {'J', 'D', 'B', 'Z'};
+
+    /** Current format version. */
+    static final int VERSION = 1;
+
+    /** Default uncompressed size of a block. */
+    static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /** Largest block size a reader accepts, guarding against corrupted headers. */
+    static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private BlockFormat() {
+        // Constants only
+    }
+
+    /**
+     * Checks if a stream starts with the block-compressed signature. The stream must support
+     * mark and reset; it is reset to where it was.
+     *
+     * @param in the stream
+     * @return true if the stream is block-compressed, false otherwise
+     * @throws IOException if the stream could not be read
+     */
+    static boolean isBlockCompressed(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte expected : MAGIC) {
+                if (in.read() != (expected & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+}
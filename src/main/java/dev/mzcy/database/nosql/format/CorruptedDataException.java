@@ -0,0 +1,20 @@
+package dev.mzcy.database.nosql.format;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a block-compressed file fails its checksum or ends early, e.g. after a torn write.
+ */
+public class CorruptedDataException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a CorruptedDataException instance.
+     *
+     * @param message the detail message
+     */
+    public CorruptedDataException(String message) {
+        super(message);
+    }
+}
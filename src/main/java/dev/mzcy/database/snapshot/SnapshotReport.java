@@ -0,0 +1,58 @@
+package dev.mzcy.database.snapshot;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Outcome of a snapshot: where it was written, how much it contains and how long it took.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class SnapshotReport {
+
+    /** The snapshot file. */
+    Path target;
+
+    /** Whether only the changes since the previous snapshot were written. */
+    boolean incremental;
+
+    /** The number of entities written. */
+    int saved;
+
+    /** The number of deleted keys written, always 0 for full snapshots. */
+    int deleted;
+
+    /** The size of the snapshot file in bytes. */
+    long bytes;
+
+    /** The time the snapshot took. */
+    Duration duration;
+
+    /**
+     * Constructs a SnapshotReport instance.
+     *
+     * @param target the snapshot file
+     * @param incremental whether the snapshot is incremental
+     * @param saved the number of entities written
+     * @param deleted the number of deleted keys written
+     * @param bytes the size of the snapshot file
+     * @param duration the time the snapshot took
+     */
+    public SnapshotReport(Path target, boolean incremental, int saved, int deleted, long bytes, Duration duration) {
+        this.target = target;
+        this.incremental = incremental;
+        this.saved = saved;
+        this.deleted = deleted;
+        this.bytes = bytes;
+        this.duration = duration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s snapshot %s: %d entities, %d deletions, %d bytes in %d ms",
+                incremental ? "incremental" : "full", target, saved, deleted, bytes, duration.toMillis());
+    }
+}
@@ -0,0 +1,36 @@
+package dev.mzcy.database.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A local store that can be backed up while it keeps serving reads and writes.
+ */
+public interface Snapshottable {
+
+    /**
+     * Write a consistent copy of all entities. The file is written next to the target and moved
+     * into place, so an existing backup is only replaced by a complete one.
+     * @param target    Snapshot file
+     * @return          Report
+     * @throws IOException  if the snapshot could not be written
+     */
+    SnapshotReport snapshot(Path target) throws IOException;
+
+    /**
+     * Write only the entities saved and the keys deleted since the previous snapshot
+     * @param target    Snapshot file
+     * @return          Report
+     * @throws IOException  if the snapshot could not be written
+     * @throws IllegalStateException    if no full snapshot was taken yet
+     */
+    SnapshotReport incrementalSnapshot(Path target) throws IOException;
+
+    /**
+     * Apply an incremental snapshot on top of the current state, e.g. after restoring the full snapshot it is based on
+     * @param snapshot  Incremental snapshot file
+     * @throws IOException  if the snapshot could not be read
+     */
+    void applyIncrementalSnapshot(Path snapshot) throws IOException;
+
+}
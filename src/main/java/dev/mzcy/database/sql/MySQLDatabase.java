@@ -1,18 +1,46 @@
 package dev.mzcy.database.sql;
 
 import dev.mzcy.database.Database;
+import dev.mzcy.database.Page;
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeFeed;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.change.ChangeType;
 import dev.mzcy.database.credentials.DatabaseCredentials;
-import dev.mzcy.database.sql.annotation.TableField;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.sql.binding.EntityMapper;
+import dev.mzcy.database.sql.binding.StatementCache;
+import dev.mzcy.database.sql.binding.TableStatements;
+import dev.mzcy.database.sql.change.SQLChangelog;
+import dev.mzcy.database.sql.expiry.SQLExpiry;
+import dev.mzcy.database.sql.profiler.QueryProfiler;
+import dev.mzcy.database.sql.profiler.QueryTrace;
+import dev.mzcy.database.sql.replica.LagProbe;
+import dev.mzcy.database.sql.replica.ReplicaEndpoint;
+import dev.mzcy.database.sql.replica.ReplicaRouter;
+import dev.mzcy.database.sql.replica.ReplicaSelection;
 import dev.mzcy.database.sql.table.TableBuilder;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 
-import java.lang.reflect.Field;
 import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Implementation of the Database interface for MySQL.
+ * <p>
+ * If the credentials list read replicas, entity reads and pages are routed to them through a
+ * {@link ReplicaRouter}, while writes always go to the primary.
  *
  * @param <E> the type of the entity
  */
@@ -20,10 +48,35 @@ import java.sql.*;
 @FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
 public class MySQLDatabase<E> implements Database<E> {
 
+    private static final String UPSERT_VERB = "REPLACE INTO";
+    private static final String CHANGELOG_SEQUENCE = "BIGINT AUTO_INCREMENT PRIMARY KEY";
+    private static final String CHANGELOG_KEY_TYPE = "VARCHAR(255)";
+    private static final String EXPIRY_SWEEP = "DELETE FROM %1$s WHERE expires_at <= ? ORDER BY expires_at LIMIT ?;";
+    private static final String EXPLAIN_PREFIX = "EXPLAIN ";
+    private static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(1);
+    private static final Duration DEFAULT_HEALTH_CHECK_INTERVAL = Duration.ofSeconds(1);
+    // The lag is measured once per health check, so a replica may be this far behind before it is ejected
+    private static final Duration DEFAULT_STICKINESS = DEFAULT_MAX_LAG.plus(DEFAULT_HEALTH_CHECK_INTERVAL);
+
     Connection connection;
     Class<? extends E> entityClass;
+    EntityMapper<E> mapper;
+    StatementCache statements;
+    ChangeFeed<E> changeFeed;
     @NonFinal
     String currentTable;
+    @NonFinal
+    SQLChangelog<E> changelog;
+    @NonFinal
+    SQLExpiry expiry;
+    @NonFinal
+    TableStatements tableStatements;
+    @NonFinal
+    OperationMetrics metrics;
+    @NonFinal
+    QueryProfiler profiler;
+    @NonFinal
+    ReplicaRouter router;
 
     /**
      * Constructs a MySQLDatabase instance.
@@ -33,9 +86,31 @@ public class MySQLDatabase<E> implements Database<E> {
      * @param entityClass the class of the entity
      */
     public MySQLDatabase(DatabaseCredentials credentials, String currentTable, Class<? extends E> entityClass) {
-        connection = createMySQLConnection(credentials);
+        this(credentials, currentTable, entityClass, MetricsRecorder.NOOP);
+    }
+
+    /**
+     * Constructs a MySQLDatabase instance that reports to the given metrics recorder.
+     *
+     * @param credentials the database credentials
+     * @param currentTable the current table name
+     * @param entityClass the class of the entity
+     * @param recorder the metrics recorder
+     */
+    public MySQLDatabase(DatabaseCredentials credentials, String currentTable, Class<? extends E> entityClass, MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("mysql", recorder);
         this.currentTable = currentTable;
         this.entityClass = entityClass;
+        this.mapper = EntityMapper.of(entityClass);
+        this.profiler = QueryProfiler.DISABLED;
+        connection = createMySQLConnection(credentials);
+        this.statements = new StatementCache(connection);
+        this.changeFeed = new ChangeFeed<>("mysql-changes-" + currentTable);
+        this.changelog = createChangelog(currentTable, SQLChangelog.DEFAULT_RETENTION);
+        this.expiry = new SQLExpiry(connection, statements, currentTable, EXPIRY_SWEEP, changelog, metrics, SQLExpiry.DEFAULT_SWEEP_INTERVAL);
+        this.tableStatements = new TableStatements(currentTable, mapper, UPSERT_VERB, expiry.isEnabled());
+        expiry.start();
+        this.router = createReplicaRouter(credentials);
     }
 
     /**
@@ -46,25 +121,91 @@ public class MySQLDatabase<E> implements Database<E> {
      */
     private Connection createMySQLConnection(DatabaseCredentials credentials) {
         try {
-            String url = "jdbc:mysql://" + credentials.getHost() + ":" + credentials.getPort() + "/" + credentials.getDatabase();
-            return DriverManager.getConnection(url, credentials.getUsername(), credentials.getPassword());
+            return openConnection(credentials);
         } catch (SQLException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Opens a MySQL connection using the provided credentials.
+     *
+     * @param credentials the database credentials
+     * @return the MySQL connection
+     * @throws SQLException if the connection could not be opened
+     */
+    private static Connection openConnection(DatabaseCredentials credentials) throws SQLException {
+        String url = "jdbc:mysql://" + credentials.getHost() + ":" + credentials.getPort() + "/" + credentials.getDatabase();
+        return DriverManager.getConnection(url, credentials.getUsername(), credentials.getPassword());
+    }
+
+    /**
+     * Creates a round-robin replica router for the read replicas of the credentials.
+     *
+     * @param credentials the database credentials
+     * @return the replica router, or {@link ReplicaRouter#PRIMARY_ONLY} if there are no replicas
+     */
+    private ReplicaRouter createReplicaRouter(DatabaseCredentials credentials) {
+        if (credentials.getReplicas().isEmpty()) {
+            return ReplicaRouter.PRIMARY_ONLY;
+        }
+        List<ReplicaEndpoint> replicas = new ArrayList<>();
+        for (DatabaseCredentials replica : credentials.getReplicas()) {
+            replicas.add(new ReplicaEndpoint(replica.getHost() + ":" + replica.getPort(), () -> openConnection(replica)));
+        }
+        return new ReplicaRouter(replicas, ReplicaSelection.ROUND_ROBIN, DEFAULT_STICKINESS, DEFAULT_MAX_LAG, LagProbe.MYSQL)
+                .startHealthChecks(DEFAULT_HEALTH_CHECK_INTERVAL);
+    }
+
+    /**
+     * Replaces the replica router, e.g. to change the selection strategy or lag threshold.
+     * The previous router is closed.
+     *
+     * @param router the new replica router, or null to send all reads to the primary
+     */
+    public void setReplicaRouter(ReplicaRouter router) {
+        ReplicaRouter previous = this.router;
+        this.router = router == null ? ReplicaRouter.PRIMARY_ONLY : router;
+        if (previous != this.router) {
+            previous.close();
+        }
+    }
+
     /**
      * Creates a table using the provided TableBuilder.
      *
      * @param tableBuilder the table builder
      */
     public void createTable(TableBuilder tableBuilder) {
+        long start = metrics.start(currentTable, OperationMetrics.CREATE_TABLE);
         try {
             connection.createStatement().execute(tableBuilder.build());
         } catch (SQLException e) {
+            metrics.error(currentTable, OperationMetrics.CREATE_TABLE);
             e.printStackTrace();
         }
+        metrics.stop(currentTable, OperationMetrics.CREATE_TABLE, start);
+    }
+
+    /**
+     * Sets the recorder that receives operation metrics.
+     *
+     * @param recorder the metrics recorder, or null to disable metrics
+     */
+    @Override
+    public void setMetricsRecorder(MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("mysql", recorder);
+        expiry.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the profiler that records slow statements.
+     *
+     * @param profiler the query profiler, or null to disable profiling
+     */
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler == null ? QueryProfiler.DISABLED : profiler;
     }
 
     /**
@@ -72,8 +213,21 @@ public class MySQLDatabase<E> implements Database<E> {
      *
      * @param table the new table name
      */
-    public void switchTable(String table) {
+    public synchronized void switchTable(String table) {
         this.currentTable = table;
+        SQLChangelog<E> previous = changelog;
+        previous.close();
+        this.changelog = createChangelog(table, previous.getRetention());
+        if (previous.isEnabled()) {
+            changelog.enable();
+        }
+        expiry.close();
+        this.expiry = new SQLExpiry(connection, statements, table, EXPIRY_SWEEP, changelog, metrics, SQLExpiry.DEFAULT_SWEEP_INTERVAL);
+        this.tableStatements = new TableStatements(table, mapper, UPSERT_VERB, expiry.isEnabled());
+        expiry.start();
+        if (changeFeed.hasSubscribers()) {
+            changelog.start();
+        }
         try {
             connection.createStatement().execute("USE " + table);
         } catch (SQLException e) {
@@ -82,87 +236,515 @@ public class MySQLDatabase<E> implements Database<E> {
     }
 
     /**
-     * Saves the provided entity to the database.
+     * Saves the provided entity to the current table, replacing any row with the same primary key.
+     * Field values are bound as typed statement parameters on a cached prepared statement. A time
+     * to live set by an earlier save is cleared.
      *
      * @param entity the entity to save
      */
     @Override
     public void save(E entity) {
-        Class<?> clazz = entity.getClass();
-        StringBuilder columns = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-        String tableName = clazz.getSimpleName().toLowerCase(); // Assuming table name is the class name in lowercase
-
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(TableField.class)) {
-                field.setAccessible(true);
-                try {
-                    columns.append(field.getName()).append(",");
-                    values.append("'").append(field.get(entity)).append("',");
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        upsert(entity, tableStatements, 0L);
+    }
 
-        if (!columns.isEmpty()) columns.setLength(columns.length() - 1);
-        if (!values.isEmpty()) values.setLength(values.length() - 1);
+    /**
+     * Saves the provided entity to the current table with a time to live. The first call adds an
+     * indexed {@value SQLExpiry#COLUMN} column to the table; expired rows are invisible to reads
+     * right away and deleted in batches by a background sweeper.
+     *
+     * @param entity the entity to save
+     * @param ttl the time to live
+     */
+    @Override
+    public void save(E entity, Duration ttl) {
+        TableStatements sql;
+        try {
+            sql = enableExpiry();
+        } catch (SQLException e) {
+            metrics.error(currentTable, OperationMetrics.SAVE);
+            e.printStackTrace();
+            return;
+        }
+        upsert(entity, sql, System.currentTimeMillis() + ttl.toMillis());
+    }
 
-        String sql = String.format("INSERT INTO %s (%s) VALUES (%s);", tableName, columns, values);
+    /**
+     * Inserts or replaces the row of an entity.
+     *
+     * @param entity the entity to save
+     * @param sql the statements of the current table
+     * @param expiresAt the expiry deadline in milliseconds since the epoch, or 0 for none
+     */
+    private void upsert(E entity, TableStatements sql, long expiresAt) {
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.SAVE);
+        String query = expiresAt == 0L ? sql.getUpsert() : sql.getUpsertExpiring();
+        SQLChangelog<E> log = changelog;
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.executeUpdate();
+        QueryTrace trace = profiler.begin(query);
+        try {
+            long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+            statements.beginWrite(log.isEnabled());
+            try {
+                PreparedStatement statement = statements.prepare(query, metrics, tableName);
+                try {
+                    synchronized (statement) {
+                        metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                        trace.started(connection);
+                        mapper.bind(statement, entity, 1);
+                        mapper.trace(entity, trace);
+                        if (expiresAt != 0L) {
+                            statement.setLong(mapper.getColumnCount() + 1, expiresAt);
+                            trace.parameter(expiresAt);
+                        }
+                        trace.mapped();
+                        int rows = statement.executeUpdate();
+                        trace.executed();
+                        trace.affected(rows);
+                        trace.finish();
+                        metrics.count(tableName, OperationMetrics.ROWS_WRITTEN, rows);
+                    }
+                } finally {
+                    statements.release(statement);
+                }
+                log.append(mapper.getKey(entity), ChangeType.SAVE, metrics);
+                statements.commitWrite();
+            } finally {
+                statements.endWrite();
+            }
+            router.wrote();
         } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.SAVE);
             e.printStackTrace();
         }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.stop(tableName, OperationMetrics.SAVE, start);
     }
 
     /**
      * Retrieves an entity from the database using the provided primary key.
+     * Served by a read replica unless the current thread wrote recently.
      *
      * @param key the primary key of the entity
      * @return the retrieved entity, or null if not found
      */
     @Override
     public E getEntity(String key) {
-        Class<? extends E> clazz = entityClass;
-        StringBuilder columns = new StringBuilder();
-        String tableName = currentTable;
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.GET);
 
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(TableField.class)) {
-                columns.append(field.getName()).append(",");
+        E entity = null;
+        QueryTrace trace = profiler.begin(sql.getSelectById());
+        trace.parameter(key);
+        long now = System.currentTimeMillis();
+        if (sql.isExpiring()) {
+            trace.parameter(now);
+        }
+        try {
+            entity = router.hasReplicas()
+                    ? routeRead(cache -> selectById(cache, sql, key, now, trace))
+                    : selectById(statements, sql, key, now, trace);
+            if (entity != null) {
+                metrics.count(tableName, OperationMetrics.ROWS_READ, 1);
             }
+        } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.GET);
+            e.printStackTrace();
         }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.stop(tableName, OperationMetrics.GET, start);
+        return entity;
+    }
+
+    /**
+     * Retrieves several entities by primary key with {@code WHERE id IN (...)} statements of at
+     * most {@link TableStatements#MAX_IDS_PER_SELECT} keys each. Served by a read replica unless
+     * the current thread wrote recently. The primary and every replica have one connection each,
+     * so concurrent callers, such as parallel warm-up batches, only run in parallel across replicas.
+     *
+     * @param keys the primary keys of the entities
+     * @return the entities found, by primary key
+     * @throws IllegalStateException if a read failed, so callers can tell failures from missing entities
+     */
+    @Override
+    public Map<String, E> getEntities(Collection<String> keys) {
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.GET_MANY);
 
-        if (!columns.isEmpty()) columns.setLength(columns.length() - 1);
+        Map<String, E> entities = new HashMap<>();
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        long now = System.currentTimeMillis();
+        SQLException failure = null;
+        for (int from = 0; failure == null && from < distinct.size(); from += TableStatements.MAX_IDS_PER_SELECT) {
+            List<String> batch = TableStatements.padKeys(distinct.subList(from, Math.min(from + TableStatements.MAX_IDS_PER_SELECT, distinct.size())));
+            String query = sql.getSelectByIds(batch.size());
+            QueryTrace trace = profiler.begin(query);
+            for (String key : batch) {
+                trace.parameter(key);
+            }
+            if (sql.isExpiring()) {
+                trace.parameter(now);
+            }
+            try {
+                if (router.hasReplicas()) {
+                    routeRead(cache -> selectByIds(cache, sql, query, batch, now, entities, trace));
+                } else {
+                    selectByIds(statements, sql, query, batch, now, entities, trace);
+                }
+            } catch (SQLException e) {
+                metrics.error(tableName, OperationMetrics.GET_MANY);
+                failure = e;
+            }
+            profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        }
+        metrics.count(tableName, OperationMetrics.ROWS_READ, entities.size());
+        metrics.stop(tableName, OperationMetrics.GET_MANY, start);
+        if (failure != null) {
+            throw new IllegalStateException("Could not read entities of " + tableName, failure);
+        }
+        return entities;
+    }
+
+    /**
+     * Retrieves a page of entities ordered by primary key using keyset (seek) pagination.
+     * The {@code id > ?} range is resolved by the primary key index, so every page costs
+     * the same regardless of depth, unlike {@code OFFSET} paging. Served by a read replica
+     * unless the current thread wrote recently.
+     *
+     * @param afterKey the primary key to continue after, or null for the first page
+     * @param limit the maximum number of entities to return
+     * @return the page of entities
+     */
+    @Override
+    public Page<E> page(String afterKey, int limit) {
+        if (limit <= 0) {
+            // A negative LIMIT means "no limit" to SQLite and is a syntax error to MySQL
+            return new Page<>(List.of(), null);
+        }
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.PAGE);
+        String query = afterKey == null ? sql.getSelectFirstPage() : sql.getSelectPageAfter();
+
+        List<E> entities = new ArrayList<>();
+        String lastKey = null;
+        QueryTrace trace = profiler.begin(query);
+        if (afterKey != null) {
+            trace.parameter(afterKey);
+        }
+        long now = System.currentTimeMillis();
+        if (sql.isExpiring()) {
+            trace.parameter(now);
+        }
+        trace.parameter(limit);
+        try {
+            lastKey = router.hasReplicas()
+                    ? routeRead(cache -> selectPage(cache, sql, query, afterKey, now, limit, entities, trace))
+                    : selectPage(statements, sql, query, afterKey, now, limit, entities, trace);
+        } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.PAGE);
+            e.printStackTrace();
+        }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.count(tableName, OperationMetrics.ROWS_READ, entities.size());
+        metrics.stop(tableName, OperationMetrics.PAGE, start);
+        return new Page<>(entities, entities.size() == limit ? lastKey : null);
+    }
 
-        String sql = String.format("SELECT %s FROM %s WHERE id = ?;", columns, tableName);
+    /**
+     * Reads the row of an entity on the given connection.
+     *
+     * @param cache the statement cache of the primary or of a replica
+     * @param sql the statements of the current table
+     * @param key the primary key of the entity
+     * @param now the current time, compared to the expiry deadline
+     * @param trace the query trace
+     * @return the entity, or null if not found
+     * @throws SQLException if the read failed
+     */
+    private E selectById(StatementCache cache, TableStatements sql, String key, long now, QueryTrace trace) throws SQLException {
+        String tableName = sql.getTable();
+        long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+        PreparedStatement statement = cache.prepare(sql.getSelectById(), metrics, tableName);
+        try {
+            synchronized (statement) {
+                metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                trace.started(cache.getConnection());
+                statement.setString(1, key);
+                if (sql.isExpiring()) {
+                    statement.setLong(2, now);
+                }
+                trace.mapped();
+                E result = null;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    trace.executed();
+                    if (resultSet.next()) {
+                        trace.fetched();
+                        result = mapper.read(resultSet, 1);
+                        trace.rowMapped();
+                    }
+                }
+                trace.finish();
+                return result;
+            }
+        } finally {
+            cache.release(statement);
+        }
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, key);
-            ResultSet resultSet = statement.executeQuery();
+    /**
+     * Reads the rows of several entities on the given connection.
+     *
+     * @param cache the statement cache of the primary or of a replica
+     * @param sql the statements of the current table
+     * @param query the {@link TableStatements#getSelectByIds(int)} statement for the keys
+     * @param keys the primary keys, padded with {@link TableStatements#padKeys(List)}
+     * @param now the current time, compared to the expiry deadline
+     * @param entities the map to put the entities into
+     * @param trace the query trace
+     * @return the number of rows read
+     * @throws SQLException if the read failed
+     */
+    private int selectByIds(StatementCache cache, TableStatements sql, String query, List<String> keys, long now,
+                            Map<String, E> entities, QueryTrace trace) throws SQLException {
+        String tableName = sql.getTable();
+        long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+        PreparedStatement statement = cache.prepare(query, metrics, tableName);
+        try {
+            synchronized (statement) {
+                metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                trace.started(cache.getConnection());
+                for (int i = 0; i < keys.size(); i++) {
+                    statement.setString(i + 1, keys.get(i));
+                }
+                if (sql.isExpiring()) {
+                    statement.setLong(keys.size() + 1, now);
+                }
+                trace.mapped();
+                int rows = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    trace.executed();
+                    while (resultSet.next()) {
+                        trace.fetched();
+                        entities.put(resultSet.getString(1), mapper.read(resultSet, 2));
+                        trace.rowMapped();
+                        rows++;
+                    }
+                }
+                trace.finish();
+                return rows;
+            }
+        } finally {
+            cache.release(statement);
+        }
+    }
 
-            if (resultSet.next()) {
-                E entity = (E) clazz.getDeclaredConstructor().newInstance();
-                for (Field field : clazz.getDeclaredFields()) {
-                    if (field.isAnnotationPresent(TableField.class)) {
-                        field.setAccessible(true);
-                        field.set(entity, resultSet.getObject(field.getName()));
+    /**
+     * Reads a page of entities on the given connection, replacing the content of the list.
+     *
+     * @param cache the statement cache of the primary or of a replica
+     * @param sql the statements of the current table
+     * @param query the page query
+     * @param afterKey the primary key to continue after, or null for the first page
+     * @param now the current time, compared to the expiry deadline
+     * @param limit the maximum number of entities to read
+     * @param entities the list to add the entities to
+     * @param trace the query trace
+     * @return the primary key of the last entity, or null if the page is empty
+     * @throws SQLException if the read failed
+     */
+    private String selectPage(StatementCache cache, TableStatements sql, String query, String afterKey, long now, int limit,
+                              List<E> entities, QueryTrace trace) throws SQLException {
+        String tableName = sql.getTable();
+        entities.clear();
+        long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+        PreparedStatement statement = cache.prepare(query, metrics, tableName);
+        try {
+            synchronized (statement) {
+                metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                trace.started(cache.getConnection());
+                int index = 1;
+                if (afterKey != null) {
+                    statement.setString(index++, afterKey);
+                }
+                if (sql.isExpiring()) {
+                    statement.setLong(index++, now);
+                }
+                statement.setInt(index, limit);
+                trace.mapped();
+                String last = null;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    trace.executed();
+                    while (resultSet.next()) {
+                        trace.fetched();
+                        last = resultSet.getString(1);
+                        entities.add(mapper.read(resultSet, 2));
+                        trace.rowMapped();
                     }
                 }
-                return entity;
+                trace.finish();
+                return last;
             }
-        } catch (Exception e) {
+        } finally {
+            cache.release(statement);
+        }
+    }
+
+    /**
+     * Runs reads of the current thread on the primary instead of a replica, e.g. reads whose
+     * result is cached and must not be older than a change that was already received.
+     *
+     * @param read the reads to run
+     * @param <T> the type of the result
+     * @return the result of the reads
+     */
+    public <T> T readFromPrimary(Supplier<T> read) {
+        return router.onPrimary(read);
+    }
+
+    /**
+     * Runs a read on a replica picked by the router, or on the primary if none is available.
+     * A replica that fails the read is ejected and the read is retried on the primary. Only
+     * used if replicas are configured, so reads without replicas allocate no lambda.
+     *
+     * @param read the read to run
+     * @param <T> the type of the result
+     * @return the result of the read
+     * @throws SQLException if the read failed on the primary
+     */
+    private <T> T routeRead(Read<T> read) throws SQLException {
+        ReplicaEndpoint replica = router.route();
+        StatementCache replicaStatements = replica == null ? null : replica.getStatements();
+        if (replicaStatements == null) {
+            return read.run(statements);
+        }
+        long start = System.nanoTime();
+        try {
+            T result = read.run(replicaStatements);
+            router.recordLatency(replica, System.nanoTime() - start);
+            return result;
+        } catch (SQLException e) {
+            router.eject(replica);
+            return read.run(statements);
+        }
+    }
+
+    /**
+     * Prepares the statements of the current table ahead of the first request: all of them on the
+     * primary, and the reads on every healthy replica. The entity mapper is already built by the
+     * constructor.
+     */
+    @Override
+    public void prime() {
+        TableStatements sql = tableStatements;
+        long start = metrics.start(sql.getTable(), OperationMetrics.PRIME);
+        try {
+            for (String query : sql.getReadStatements()) {
+                statements.preload(query, metrics, sql.getTable());
+            }
+            for (String query : sql.getWriteStatements()) {
+                statements.preload(query, metrics, sql.getTable());
+            }
+            changelog.prime(metrics);
+        } catch (SQLException e) {
+            metrics.error(sql.getTable(), OperationMetrics.PRIME);
             e.printStackTrace();
         }
-        return null;
+        for (ReplicaEndpoint replica : router.getReplicas()) {
+            StatementCache cache = replica.getStatements();
+            if (!replica.isHealthy() || cache == null) {
+                continue;
+            }
+            try {
+                for (String query : sql.getReadStatements()) {
+                    cache.preload(query, metrics, sql.getTable());
+                }
+            } catch (SQLException e) {
+                metrics.error(sql.getTable(), OperationMetrics.PRIME);
+                router.eject(replica);
+            }
+        }
+        metrics.stop(sql.getTable(), OperationMetrics.PRIME, start);
+    }
+
+    /**
+     * Subscribes to saves and deletes of the current table, made by any node. Enables the
+     * changelog and polls it on the primary every {@link SQLChangelog#DEFAULT_POLL_INTERVAL};
+     * events carry the key but not the entity.
+     *
+     * @param listener the listener, called on the change feed thread
+     * @return the subscription
+     */
+    @Override
+    public synchronized ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        ChangeSubscription subscription = changeFeed.subscribe(listener);
+        changelog.start();
+        return subscription;
     }
 
     /**
-     * Closes the database connection.
+     * Starts logging saves and deletes of the current table to its changelog without subscribing,
+     * so nodes that only write are seen by subscribers on other nodes.
+     */
+    public void enableChangelog() {
+        changelog.enable();
+    }
+
+    /**
+     * Sets the age after which changelog entries of the current table are deleted in the
+     * background, {@link SQLChangelog#DEFAULT_RETENTION} by default.
+     *
+     * @param retention the retention period, or null to keep entries until {@link #pruneChangelog(Duration)} is called
+     */
+    public void setChangelogRetention(Duration retention) {
+        changelog.setRetention(retention);
+    }
+
+    /**
+     * Deletes changelog entries of the current table older than the given age.
+     *
+     * @param maxAge the age after which entries are deleted
+     */
+    public void pruneChangelog(Duration maxAge) {
+        changelog.prune(maxAge);
+    }
+
+    /**
+     * Adds the expiry column to the current table if needed and switches to statements that filter on it.
+     *
+     * @return the statements of the current table
+     * @throws SQLException if the column could not be added
+     */
+    private synchronized TableStatements enableExpiry() throws SQLException {
+        expiry.enable();
+        if (!tableStatements.isExpiring() && expiry.isEnabled()) {
+            tableStatements = new TableStatements(currentTable, mapper, UPSERT_VERB, true);
+        }
+        return tableStatements;
+    }
+
+    /**
+     * Creates the changelog of a table.
+     *
+     * @param table the table name
+     * @param retention the age after which changelog entries are deleted, or null to keep them
+     * @return the changelog
+     */
+    private SQLChangelog<E> createChangelog(String table, Duration retention) {
+        return new SQLChangelog<>(connection, statements, table, CHANGELOG_SEQUENCE, CHANGELOG_KEY_TYPE, changeFeed, SQLChangelog.DEFAULT_POLL_INTERVAL, retention);
+    }
+
+    /**
+     * Closes the database connection and all replica connections.
      */
     public void close() {
+        changelog.close();
+        expiry.close();
+        changeFeed.close();
+        router.close();
+        statements.close();
         try {
             connection.close();
         } catch (SQLException e) {
@@ -188,16 +770,66 @@ public class MySQLDatabase<E> implements Database<E> {
      *
      * @param key the primary key of the entity to delete
      */
+    @Override
     public void deleteEntity(String key) {
-        String tableName = currentTable;
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.DELETE);
+        SQLChangelog<E> log = changelog;
 
-        String sql = String.format("DELETE FROM %s WHERE id = ?;", tableName);
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, key);
-            statement.executeUpdate();
+        QueryTrace trace = profiler.begin(sql.getDeleteById());
+        try {
+            long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+            statements.beginWrite(log.isEnabled());
+            try {
+                PreparedStatement statement = statements.prepare(sql.getDeleteById(), metrics, tableName);
+                try {
+                    synchronized (statement) {
+                        metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                        trace.started(connection);
+                        statement.setString(1, key);
+                        trace.parameter(key);
+                        trace.mapped();
+                        int rows = statement.executeUpdate();
+                        trace.executed();
+                        trace.affected(rows);
+                        trace.finish();
+                        metrics.count(tableName, OperationMetrics.ROWS_WRITTEN, rows);
+                        if (rows > 0) {
+                            log.append(key, ChangeType.DELETE, metrics);
+                        }
+                    }
+                } finally {
+                    statements.release(statement);
+                }
+                statements.commitWrite();
+            } finally {
+                statements.endWrite();
+            }
+            router.wrote();
         } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.DELETE);
             e.printStackTrace();
         }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.stop(tableName, OperationMetrics.DELETE, start);
+    }
+
+    /**
+     * A read that can run against the statements of the primary or of a replica.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    private interface Read<T> {
+
+        /**
+         * Runs the read.
+         *
+         * @param statements the statement cache of the chosen connection
+         * @return the result
+         * @throws SQLException if the read failed
+         */
+        T run(StatementCache statements) throws SQLException;
     }
 }
\ No newline at end of file
@@ -1,29 +1,85 @@
 package dev.mzcy.database.sql;
 
 import dev.mzcy.database.Database;
+import dev.mzcy.database.Page;
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeFeed;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.change.ChangeType;
 import dev.mzcy.database.credentials.DatabaseCredentials;
-import dev.mzcy.database.sql.annotation.TableField;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.sql.binding.EntityMapper;
+import dev.mzcy.database.sql.binding.StatementCache;
+import dev.mzcy.database.sql.binding.TableStatements;
+import dev.mzcy.database.sql.change.SQLChangelog;
+import dev.mzcy.database.sql.expiry.SQLExpiry;
+import dev.mzcy.database.sql.profiler.QueryProfiler;
+import dev.mzcy.database.sql.profiler.QueryTrace;
+import dev.mzcy.database.snapshot.SnapshotReport;
+import dev.mzcy.database.snapshot.Snapshottable;
 import dev.mzcy.database.sql.table.TableBuilder;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Implementation of the Database interface for SQLite.
+ * <p>
+ * Snapshots are taken with {@code VACUUM INTO} on a separate connection, so this instance keeps
+ * serving requests meanwhile. In the default rollback journal mode, writers wait while the
+ * snapshot reads; with {@code PRAGMA journal_mode=WAL} they do not. Incremental snapshots read
+ * the changed keys from the changelog, which the first full snapshot enables.
  *
  * @param <E> the type of the entity
  */
 @Getter
 @FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
-public class SQLiteDatabase<E> implements Database<E> {
+public class SQLiteDatabase<E> implements Database<E>, Snapshottable {
+
+    private static final String UPSERT_VERB = "INSERT OR REPLACE INTO";
+    private static final String CHANGELOG_SEQUENCE = "INTEGER PRIMARY KEY AUTOINCREMENT";
+    private static final String CHANGELOG_KEY_TYPE = "TEXT";
+    private static final String EXPIRY_SWEEP = "DELETE FROM %1$s WHERE id IN (SELECT id FROM %1$s WHERE expires_at <= ? LIMIT ?);";
+    private static final String EXPLAIN_PREFIX = "EXPLAIN QUERY PLAN ";
 
     Connection connection;
     Class<? extends E> entityClass;
+    EntityMapper<E> mapper;
+    StatementCache statements;
+    ChangeFeed<E> changeFeed;
     @NonFinal
     String currentTable;
+    @NonFinal
+    SQLChangelog<E> changelog;
+    @NonFinal
+    SQLExpiry expiry;
+    @NonFinal
+    TableStatements tableStatements;
+    @NonFinal
+    OperationMetrics metrics;
+    @NonFinal
+    QueryProfiler profiler;
 
     /**
      * Constructs a SQLiteDatabase instance.
@@ -33,9 +89,30 @@ public class SQLiteDatabase<E> implements Database<E> {
      * @param entityClass the class of the entity
      */
     public SQLiteDatabase(DatabaseCredentials credentials, String currentTable, Class<? extends E> entityClass) {
-        connection = createSQLiteConnection(credentials);
+        this(credentials, currentTable, entityClass, MetricsRecorder.NOOP);
+    }
+
+    /**
+     * Constructs a SQLiteDatabase instance that reports to the given metrics recorder.
+     *
+     * @param credentials the database credentials
+     * @param currentTable the current table name
+     * @param entityClass the class of the entity
+     * @param recorder the metrics recorder
+     */
+    public SQLiteDatabase(DatabaseCredentials credentials, String currentTable, Class<? extends E> entityClass, MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("sqlite", recorder);
         this.currentTable = currentTable;
         this.entityClass = entityClass;
+        this.mapper = EntityMapper.of(entityClass);
+        this.profiler = QueryProfiler.DISABLED;
+        connection = createSQLiteConnection(credentials);
+        this.statements = new StatementCache(connection);
+        this.changeFeed = new ChangeFeed<>("sqlite-changes-" + currentTable);
+        this.changelog = createChangelog(currentTable, SQLChangelog.DEFAULT_RETENTION);
+        this.expiry = new SQLExpiry(connection, statements, currentTable, EXPIRY_SWEEP, changelog, metrics, SQLExpiry.DEFAULT_SWEEP_INTERVAL);
+        this.tableStatements = new TableStatements(currentTable, mapper, UPSERT_VERB, expiry.isEnabled());
+        expiry.start();
     }
 
     /**
@@ -60,11 +137,34 @@ public class SQLiteDatabase<E> implements Database<E> {
      * @param tableBuilder the table builder
      */
     public void createTable(TableBuilder tableBuilder) {
+        long start = metrics.start(currentTable, OperationMetrics.CREATE_TABLE);
         try {
             connection.createStatement().execute(tableBuilder.build());
         } catch (SQLException e) {
+            metrics.error(currentTable, OperationMetrics.CREATE_TABLE);
             e.printStackTrace();
         }
+        metrics.stop(currentTable, OperationMetrics.CREATE_TABLE, start);
+    }
+
+    /**
+     * Sets the recorder that receives operation metrics.
+     *
+     * @param recorder the metrics recorder, or null to disable metrics
+     */
+    @Override
+    public void setMetricsRecorder(MetricsRecorder recorder) {
+        this.metrics = new OperationMetrics("sqlite", recorder);
+        expiry.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the profiler that records slow statements.
+     *
+     * @param profiler the query profiler, or null to disable profiling
+     */
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler == null ? QueryProfiler.DISABLED : profiler;
     }
 
     /**
@@ -72,44 +172,106 @@ public class SQLiteDatabase<E> implements Database<E> {
      *
      * @param table the new table name
      */
-    public void switchTable(String table) {
+    public synchronized void switchTable(String table) {
         this.currentTable = table;
+        SQLChangelog<E> previous = changelog;
+        previous.close();
+        this.changelog = createChangelog(table, previous.getRetention());
+        if (previous.isEnabled()) {
+            changelog.enable();
+        }
+        expiry.close();
+        this.expiry = new SQLExpiry(connection, statements, table, EXPIRY_SWEEP, changelog, metrics, SQLExpiry.DEFAULT_SWEEP_INTERVAL);
+        this.tableStatements = new TableStatements(table, mapper, UPSERT_VERB, expiry.isEnabled());
+        expiry.start();
+        if (changeFeed.hasSubscribers()) {
+            changelog.start();
+        }
     }
 
     /**
-     * Saves the provided entity to the database.
+     * Saves the provided entity to the current table, replacing any row with the same primary key.
+     * Field values are bound as typed statement parameters on a cached prepared statement. A time
+     * to live set by an earlier save is cleared.
      *
      * @param entity the entity to save
      */
     @Override
     public void save(E entity) {
-        Class<?> clazz = entity.getClass();
-        StringBuilder columns = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-        String tableName = clazz.getSimpleName().toLowerCase(); // Assuming table name is the class name in lowercase
-
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(TableField.class)) {
-                field.setAccessible(true);
-                try {
-                    columns.append(field.getName()).append(",");
-                    values.append("'").append(field.get(entity)).append("',");
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        upsert(entity, tableStatements, 0L);
+    }
 
-        if (!columns.isEmpty()) columns.setLength(columns.length() - 1);
-        if (!values.isEmpty()) values.setLength(values.length() - 1);
+    /**
+     * Saves the provided entity to the current table with a time to live. The first call adds an
+     * indexed {@value SQLExpiry#COLUMN} column to the table; expired rows are invisible to reads
+     * right away and deleted in batches by a background sweeper.
+     *
+     * @param entity the entity to save
+     * @param ttl the time to live
+     */
+    @Override
+    public void save(E entity, Duration ttl) {
+        TableStatements sql;
+        try {
+            sql = enableExpiry();
+        } catch (SQLException e) {
+            metrics.error(currentTable, OperationMetrics.SAVE);
+            e.printStackTrace();
+            return;
+        }
+        upsert(entity, sql, System.currentTimeMillis() + ttl.toMillis());
+    }
 
-        String sql = String.format("INSERT INTO %s (%s) VALUES (%s);", tableName, columns, values);
+    /**
+     * Inserts or replaces the row of an entity.
+     *
+     * @param entity the entity to save
+     * @param sql the statements of the current table
+     * @param expiresAt the expiry deadline in milliseconds since the epoch, or 0 for none
+     */
+    private void upsert(E entity, TableStatements sql, long expiresAt) {
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.SAVE);
+        String query = expiresAt == 0L ? sql.getUpsert() : sql.getUpsertExpiring();
+        SQLChangelog<E> log = changelog;
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.executeUpdate();
+        QueryTrace trace = profiler.begin(query);
+        try {
+            long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+            statements.beginWrite(log.isEnabled());
+            try {
+                PreparedStatement statement = statements.prepare(query, metrics, tableName);
+                try {
+                    synchronized (statement) {
+                        metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                        trace.started(connection);
+                        mapper.bind(statement, entity, 1);
+                        mapper.trace(entity, trace);
+                        if (expiresAt != 0L) {
+                            statement.setLong(mapper.getColumnCount() + 1, expiresAt);
+                            trace.parameter(expiresAt);
+                        }
+                        trace.mapped();
+                        int rows = statement.executeUpdate();
+                        trace.executed();
+                        trace.affected(rows);
+                        trace.finish();
+                        metrics.count(tableName, OperationMetrics.ROWS_WRITTEN, rows);
+                    }
+                } finally {
+                    statements.release(statement);
+                }
+                log.append(mapper.getKey(entity), ChangeType.SAVE, metrics);
+                statements.commitWrite();
+            } finally {
+                statements.endWrite();
+            }
         } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.SAVE);
             e.printStackTrace();
         }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.stop(tableName, OperationMetrics.SAVE, start);
     }
 
     /**
@@ -120,44 +282,598 @@ public class SQLiteDatabase<E> implements Database<E> {
      */
     @Override
     public E getEntity(String key) {
-        Class<? extends E> clazz = entityClass;
-        StringBuilder columns = new StringBuilder();
-        String tableName = currentTable;
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.GET);
 
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(TableField.class)) {
-                columns.append(field.getName()).append(",");
+        E entity = null;
+        QueryTrace trace = profiler.begin(sql.getSelectById());
+        try {
+            long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+            PreparedStatement statement = statements.prepare(sql.getSelectById(), metrics, tableName);
+            try {
+                synchronized (statement) {
+                    metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                    trace.started(connection);
+                    statement.setString(1, key);
+                    trace.parameter(key);
+                    if (sql.isExpiring()) {
+                        long now = System.currentTimeMillis();
+                        statement.setLong(2, now);
+                        trace.parameter(now);
+                    }
+                    trace.mapped();
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        trace.executed();
+                        if (resultSet.next()) {
+                            trace.fetched();
+                            entity = mapper.read(resultSet, 1);
+                            trace.rowMapped();
+                            metrics.count(tableName, OperationMetrics.ROWS_READ, 1);
+                        }
+                    }
+                    trace.finish();
+                }
+            } finally {
+                statements.release(statement);
             }
+        } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.GET);
+            e.printStackTrace();
         }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.stop(tableName, OperationMetrics.GET, start);
+        return entity;
+    }
 
-        if (!columns.isEmpty()) columns.setLength(columns.length() - 1);
+    /**
+     * Retrieves several entities by primary key with {@code WHERE id IN (...)} statements of at
+     * most {@link TableStatements#MAX_IDS_PER_SELECT} keys each. All reads share the one
+     * connection, so concurrent callers, such as parallel warm-up batches, are served one
+     * statement at a time.
+     *
+     * @param keys the primary keys of the entities
+     * @return the entities found, by primary key
+     * @throws IllegalStateException if a read failed, so callers can tell failures from missing entities
+     */
+    @Override
+    public Map<String, E> getEntities(Collection<String> keys) {
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.GET_MANY);
 
-        String sql = String.format("SELECT %s FROM %s WHERE id = ?;", columns, tableName);
+        Map<String, E> entities = new HashMap<>();
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        long now = System.currentTimeMillis();
+        SQLException failure = null;
+        for (int from = 0; failure == null && from < distinct.size(); from += TableStatements.MAX_IDS_PER_SELECT) {
+            List<String> batch = TableStatements.padKeys(distinct.subList(from, Math.min(from + TableStatements.MAX_IDS_PER_SELECT, distinct.size())));
+            String query = sql.getSelectByIds(batch.size());
+            QueryTrace trace = profiler.begin(query);
+            try {
+                long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+                PreparedStatement statement = statements.prepare(query, metrics, tableName);
+                try {
+                    synchronized (statement) {
+                        metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                        trace.started(connection);
+                        for (int i = 0; i < batch.size(); i++) {
+                            statement.setString(i + 1, batch.get(i));
+                            trace.parameter(batch.get(i));
+                        }
+                        if (sql.isExpiring()) {
+                            statement.setLong(batch.size() + 1, now);
+                            trace.parameter(now);
+                        }
+                        trace.mapped();
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            trace.executed();
+                            while (resultSet.next()) {
+                                trace.fetched();
+                                entities.put(resultSet.getString(1), mapper.read(resultSet, 2));
+                                trace.rowMapped();
+                            }
+                        }
+                        trace.finish();
+                    }
+                } finally {
+                    statements.release(statement);
+                }
+            } catch (SQLException e) {
+                metrics.error(tableName, OperationMetrics.GET_MANY);
+                failure = e;
+            }
+            profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        }
+        metrics.count(tableName, OperationMetrics.ROWS_READ, entities.size());
+        metrics.stop(tableName, OperationMetrics.GET_MANY, start);
+        if (failure != null) {
+            throw new IllegalStateException("Could not read entities of " + tableName, failure);
+        }
+        return entities;
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, key);
-            ResultSet resultSet = statement.executeQuery();
+    /**
+     * Retrieves a page of entities ordered by primary key using keyset (seek) pagination.
+     * The {@code id > ?} range is resolved by the primary key index, so every page costs
+     * the same regardless of depth, unlike {@code OFFSET} paging.
+     *
+     * @param afterKey the primary key to continue after, or null for the first page
+     * @param limit the maximum number of entities to return
+     * @return the page of entities
+     */
+    @Override
+    public Page<E> page(String afterKey, int limit) {
+        if (limit <= 0) {
+            // A negative LIMIT means "no limit" to SQLite and is a syntax error to MySQL
+            return new Page<>(List.of(), null);
+        }
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.PAGE);
+        String query = afterKey == null ? sql.getSelectFirstPage() : sql.getSelectPageAfter();
 
-            if (resultSet.next()) {
-                E entity = (E) clazz.getDeclaredConstructor().newInstance();
-                for (Field field : clazz.getDeclaredFields()) {
-                    if (field.isAnnotationPresent(TableField.class)) {
-                        field.setAccessible(true);
-                        field.set(entity, resultSet.getObject(field.getName()));
+        List<E> entities = new ArrayList<>();
+        String lastKey = null;
+        QueryTrace trace = profiler.begin(query);
+        try {
+            long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+            PreparedStatement statement = statements.prepare(query, metrics, tableName);
+            try {
+                synchronized (statement) {
+                    metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                    trace.started(connection);
+                    int index = 1;
+                    if (afterKey != null) {
+                        statement.setString(index++, afterKey);
+                        trace.parameter(afterKey);
                     }
+                    if (sql.isExpiring()) {
+                        long now = System.currentTimeMillis();
+                        statement.setLong(index++, now);
+                        trace.parameter(now);
+                    }
+                    statement.setInt(index, limit);
+                    trace.parameter(limit);
+                    trace.mapped();
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        trace.executed();
+                        while (resultSet.next()) {
+                            trace.fetched();
+                            lastKey = resultSet.getString(1);
+                            entities.add(mapper.read(resultSet, 2));
+                            trace.rowMapped();
+                        }
+                    }
+                    trace.finish();
                 }
-                return entity;
+            } finally {
+                statements.release(statement);
+            }
+        } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.PAGE);
+            e.printStackTrace();
+        }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.count(tableName, OperationMetrics.ROWS_READ, entities.size());
+        metrics.stop(tableName, OperationMetrics.PAGE, start);
+        return new Page<>(entities, entities.size() == limit ? lastKey : null);
+    }
+
+    /**
+     * Prepares the statements of the current table ahead of the first request. The entity mapper
+     * is already built by the constructor.
+     */
+    @Override
+    public void prime() {
+        TableStatements sql = tableStatements;
+        long start = metrics.start(sql.getTable(), OperationMetrics.PRIME);
+        try {
+            for (String query : sql.getReadStatements()) {
+                statements.preload(query, metrics, sql.getTable());
+            }
+            for (String query : sql.getWriteStatements()) {
+                statements.preload(query, metrics, sql.getTable());
+            }
+            changelog.prime(metrics);
+        } catch (SQLException e) {
+            metrics.error(sql.getTable(), OperationMetrics.PRIME);
+            e.printStackTrace();
+        }
+        metrics.stop(sql.getTable(), OperationMetrics.PRIME, start);
+    }
+
+    /**
+     * Subscribes to saves and deletes of the current table, made by any node. Enables the
+     * changelog and polls it every {@link SQLChangelog#DEFAULT_POLL_INTERVAL}; events carry the
+     * key but not the entity.
+     *
+     * @param listener the listener, called on the change feed thread
+     * @return the subscription
+     */
+    @Override
+    public synchronized ChangeSubscription subscribe(Consumer<ChangeEvent<E>> listener) {
+        ChangeSubscription subscription = changeFeed.subscribe(listener);
+        changelog.start();
+        return subscription;
+    }
+
+    /**
+     * Starts logging saves and deletes of the current table to its changelog without subscribing,
+     * so nodes that only write are seen by subscribers on other nodes.
+     */
+    public void enableChangelog() {
+        changelog.enable();
+    }
+
+    /**
+     * Sets the age after which changelog entries of the current table are deleted in the
+     * background, {@link SQLChangelog#DEFAULT_RETENTION} by default.
+     *
+     * @param retention the retention period, or null to keep entries until {@link #pruneChangelog(Duration)} is called
+     */
+    public void setChangelogRetention(Duration retention) {
+        changelog.setRetention(retention);
+    }
+
+    /**
+     * Deletes changelog entries of the current table older than the given age.
+     *
+     * @param maxAge the age after which entries are deleted
+     */
+    public void pruneChangelog(Duration maxAge) {
+        changelog.prune(maxAge);
+    }
+
+    /**
+     * Adds the expiry column to the current table if needed and switches to statements that filter on it.
+     *
+     * @return the statements of the current table
+     * @throws SQLException if the column could not be added
+     */
+    private synchronized TableStatements enableExpiry() throws SQLException {
+        expiry.enable();
+        if (!tableStatements.isExpiring() && expiry.isEnabled()) {
+            tableStatements = new TableStatements(currentTable, mapper, UPSERT_VERB, true);
+        }
+        return tableStatements;
+    }
+
+    /**
+     * Creates the changelog of a table, keeping the rows the next incremental snapshot needs.
+     *
+     * @param table the table name
+     * @param retention the age after which changelog entries are deleted, or null to keep them
+     * @return the changelog
+     */
+    private SQLChangelog<E> createChangelog(String table, Duration retention) {
+        SQLChangelog<E> log = new SQLChangelog<>(connection, statements, table, CHANGELOG_SEQUENCE, CHANGELOG_KEY_TYPE, changeFeed, SQLChangelog.DEFAULT_POLL_INTERVAL, retention);
+        try (ResultSet snapshots = connection.getMetaData().getTables(null, null, table + "_snapshots", null)) {
+            if (snapshots.next()) {
+                log.pin(lastSnapshotSequence(table));
             }
-        } catch (Exception e) {
+        } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return log;
+    }
+
+    /**
+     * Writes a consistent copy of the whole database file, all tables included, with
+     * {@code VACUUM INTO}. Enables the changelog of the current table and records the last
+     * changelog sequence the copy contains, as the base of the next incremental snapshot.
+     *
+     * @param target the snapshot file
+     * @return the report, counting the rows of the current table
+     * @throws IOException if the snapshot could not be written
+     */
+    @Override
+    public SnapshotReport snapshot(Path target) throws IOException {
+        long start = System.nanoTime();
+        String table = currentTable;
+        SQLChangelog<E> log = changelog;
+        log.enable();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        int rows;
+        long sequence;
+        try {
+            withSnapshotConnection(snapshotConnection -> {
+                try (Statement statement = snapshotConnection.createStatement()) {
+                    statement.execute("VACUUM INTO " + quote(temporary));
+                }
+            });
+            // Read the bounds from the copy itself, so they match its content exactly
+            try (Connection copy = DriverManager.getConnection("jdbc:sqlite:" + temporary.toAbsolutePath());
+                 Statement statement = copy.createStatement()) {
+                rows = (int) queryLong(statement, "SELECT COUNT(*) FROM " + table + ";");
+                sequence = highestSequence(statement, log);
+            }
+            force(temporary);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            recordSnapshot(table, sequence);
+            log.pin(sequence);
+        } catch (SQLException e) {
+            Files.deleteIfExists(temporary);
+            throw new IOException("Could not snapshot " + table + " to " + target, e);
+        }
+        return new SnapshotReport(target, false, rows, 0, Files.size(target), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Writes the rows of the current table changed since the previous snapshot to a new SQLite
+     * file: a table of the same name with the current rows, and a {@code deleted_keys} table.
+     *
+     * @param target the snapshot file
+     * @return the report
+     * @throws IOException if the snapshot could not be written
+     * @throws IllegalStateException if no snapshot of the current table was taken yet, or changelog
+     *                               rows it needs were deleted, so a full snapshot is required
+     */
+    @Override
+    public SnapshotReport incrementalSnapshot(Path target) throws IOException {
+        long start = System.nanoTime();
+        String table = currentTable;
+        SQLChangelog<E> log = changelog;
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        long[] counts = new long[3];
+        try {
+            long from = lastSnapshotSequence(table);
+            if (from < 0) {
+                throw new IllegalStateException("Take a full snapshot of " + table + " before an incremental one");
+            }
+            log.enable();
+            withSnapshotConnection(snapshotConnection -> {
+                boolean autoCommit = snapshotConnection.getAutoCommit();
+                try (Statement statement = snapshotConnection.createStatement()) {
+                    statement.execute("ATTACH DATABASE " + quote(temporary) + " AS snapshot;");
+                    try {
+                        snapshotConnection.setAutoCommit(false);
+                        long to = highestSequence(statement, log);
+                        long first = queryLong(statement, "SELECT COALESCE(MIN(seq), 0) FROM " + log.getTable() + ";");
+                        if ((first == 0L ? to : first - 1) > from) {
+                            throw new IllegalStateException("Changelog rows of " + table + " after sequence " + from
+                                    + " were deleted; take a full snapshot");
+                        }
+                        String changed = String.format("SELECT entity_key FROM %s WHERE seq > %d AND seq <= %d", log.getTable(), from, to);
+                        statement.execute(String.format("CREATE TABLE snapshot.%1$s AS SELECT * FROM %1$s WHERE id IN (%2$s);", table, changed));
+                        statement.execute(String.format("CREATE TABLE snapshot.deleted_keys AS SELECT DISTINCT entity_key FROM (%s) WHERE entity_key NOT IN (SELECT id FROM %s);", changed, table));
+                        counts[0] = queryLong(statement, "SELECT COUNT(*) FROM snapshot." + table + ";");
+                        counts[1] = queryLong(statement, "SELECT COUNT(*) FROM snapshot.deleted_keys;");
+                        counts[2] = to;
+                        snapshotConnection.commit();
+                    } finally {
+                        snapshotConnection.setAutoCommit(autoCommit);
+                        statement.execute("DETACH DATABASE snapshot;");
+                    }
+                }
+            });
+            force(temporary);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            recordSnapshot(table, counts[2]);
+            log.pin(counts[2]);
+        } catch (SQLException e) {
+            Files.deleteIfExists(temporary);
+            throw new IOException("Could not snapshot " + table + " to " + target, e);
+        } catch (IllegalStateException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return new SnapshotReport(target, true, (int) counts[0], (int) counts[1], Files.size(target), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Applies an incremental snapshot written by {@link #incrementalSnapshot(Path)} to the current
+     * table in one transaction, logging the changes if the changelog is enabled. Rows are copied
+     * by column name; columns the snapshot has and the table lacks, such as
+     * {@value SQLExpiry#COLUMN}, are added first.
+     *
+     * @param snapshot the incremental snapshot file
+     * @throws IOException if the snapshot could not be applied
+     */
+    @Override
+    public synchronized void applyIncrementalSnapshot(Path snapshot) throws IOException {
+        String table = currentTable;
+        long now = System.currentTimeMillis();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ATTACH DATABASE " + quote(snapshot) + " AS snapshot;");
+            try {
+                Map<String, String> columns = columnTypes(statement, "snapshot", table);
+                addMissingColumns(statement, table, columns);
+                String columnList = String.join(",", columns.keySet());
+                SQLChangelog<E> log = changelog;
+                statements.beginWrite(true);
+                try {
+                    statement.execute(String.format("%s %s (%s) SELECT %3$s FROM snapshot.%2$s;", UPSERT_VERB, table, columnList));
+                    statement.execute(String.format("DELETE FROM %s WHERE id IN (SELECT entity_key FROM snapshot.deleted_keys);", table));
+                    if (log.isEnabled()) {
+                        statement.execute(String.format("INSERT INTO %s (entity_key, change_type, changed_at) SELECT id, 'S', %d FROM snapshot.%s;", log.getTable(), now, table));
+                        statement.execute(String.format("INSERT INTO %s (entity_key, change_type, changed_at) SELECT entity_key, 'D', %d FROM snapshot.deleted_keys;", log.getTable(), now));
+                    }
+                    statements.commitWrite();
+                } finally {
+                    statements.endWrite();
+                }
+            } finally {
+                statement.execute("DETACH DATABASE snapshot;");
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not apply " + snapshot + " to " + table, e);
+        }
+    }
+
+    /**
+     * Reads the columns of a table and their declared types.
+     *
+     * @param statement the statement to run the query on
+     * @param schema the schema of the table, e.g. {@code main} or an attached database
+     * @param table the table name
+     * @return the declared types by column name, in table order
+     * @throws SQLException if the columns could not be read
+     */
+    private static Map<String, String> columnTypes(Statement statement, String schema, String table) throws SQLException {
+        Map<String, String> columns = new LinkedHashMap<>();
+        try (ResultSet resultSet = statement.executeQuery(String.format("PRAGMA %s.table_info(%s);", schema, table))) {
+            while (resultSet.next()) {
+                columns.put(resultSet.getString("name"), resultSet.getString("type"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Adds the given columns the table does not have yet. The expiry column is added with its
+     * index, and switches reads to filter on it.
+     *
+     * @param statement the statement to run the changes on
+     * @param table the table name
+     * @param columns the declared types by column name
+     * @throws SQLException if a column could not be added
+     */
+    private void addMissingColumns(Statement statement, String table, Map<String, String> columns) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        for (String column : columnTypes(statement, "main", table).keySet()) {
+            existing.add(column.toLowerCase(Locale.ROOT));
+        }
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            if (existing.contains(column.getKey().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            if (SQLExpiry.COLUMN.equalsIgnoreCase(column.getKey())) {
+                enableExpiry();
+                continue;
+            }
+            statements.beginWrite(false);
+            try {
+                statement.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s;", table, column.getKey(), column.getValue()));
+            } finally {
+                statements.endWrite();
+            }
+        }
+    }
+
+    /**
+     * Runs snapshot work on a second connection to the same file, or on the shared connection for
+     * in-memory databases, which a second connection would not see.
+     *
+     * @param work the work to run
+     * @throws SQLException if the work failed
+     */
+    private void withSnapshotConnection(SnapshotWork work) throws SQLException {
+        String url = connection.getMetaData().getURL();
+        if (url.contains(":memory:") || url.equals("jdbc:sqlite:")) {
+            synchronized (this) {
+                work.run(connection);
+            }
+            return;
+        }
+        try (Connection snapshotConnection = DriverManager.getConnection(url)) {
+            work.run(snapshotConnection);
+        }
+    }
+
+    /**
+     * Records the last changelog sequence a snapshot of a table contains.
+     *
+     * @param table the table name
+     * @param sequence the changelog sequence
+     * @throws SQLException if the sequence could not be stored
+     */
+    private void recordSnapshot(String table, long sequence) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("CREATE TABLE IF NOT EXISTS %s_snapshots (seq BIGINT NOT NULL, taken_at BIGINT NOT NULL);", table));
+            statement.execute(String.format("INSERT INTO %s_snapshots (seq, taken_at) VALUES (%d, %d);", table, sequence, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Reads the last changelog sequence a snapshot of a table contains.
+     *
+     * @param table the table name
+     * @return the sequence, or -1 if no snapshot was taken
+     * @throws SQLException if the sequence could not be read
+     */
+    private long lastSnapshotSequence(String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("CREATE TABLE IF NOT EXISTS %s_snapshots (seq BIGINT NOT NULL, taken_at BIGINT NOT NULL);", table));
+            return queryLong(statement, String.format("SELECT COALESCE(MAX(seq), -1) FROM %s_snapshots;", table));
+        }
+    }
+
+    /**
+     * Reads the highest sequence number the changelog ever assigned, including rows deleted since.
+     *
+     * @param statement the statement to run the query on
+     * @param log the changelog
+     * @return the sequence number, or 0 if no row was logged yet
+     * @throws SQLException if the query failed
+     */
+    private static long highestSequence(Statement statement, SQLChangelog<?> log) throws SQLException {
+        return queryLong(statement, String.format("SELECT MAX(COALESCE((SELECT MAX(seq) FROM %1$s), 0), "
+                + "COALESCE((SELECT seq FROM sqlite_sequence WHERE name = '%1$s'), 0));", log.getTable()));
+    }
+
+    /**
+     * Runs a query returning a single number.
+     *
+     * @param statement the statement to run it on
+     * @param query the query
+     * @return the number, or 0 if there is no row
+     * @throws SQLException if the query failed
+     */
+    private static long queryLong(Statement statement, String query) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(query)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0L;
+        }
+    }
+
+    /**
+     * Quotes a path as an SQL string literal.
+     *
+     * @param path the path
+     * @return the literal
+     */
+    private static String quote(Path path) {
+        return "'" + path.toAbsolutePath().toString().replace("'", "''") + "'";
+    }
+
+    /**
+     * Flushes a snapshot copy to the storage device before it is moved into place, since SQLite
+     * does not sync the file written by {@code VACUUM INTO} or an attached database.
+     *
+     * @param written the file
+     * @throws IOException if the file could not be flushed
+     */
+    private static void force(Path written) throws IOException {
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Work run on the snapshot connection.
+     */
+    @FunctionalInterface
+    private interface SnapshotWork {
+
+        /**
+         * Runs the work.
+         *
+         * @param connection the snapshot connection
+         * @throws SQLException if the work failed
+         */
+        void run(Connection connection) throws SQLException;
     }
 
     /**
      * Closes the database connection.
      */
     public void close() {
+        changelog.close();
+        expiry.close();
+        changeFeed.close();
+        statements.close();
         try {
             connection.close();
         } catch (SQLException e) {
@@ -183,16 +899,47 @@ public class SQLiteDatabase<E> implements Database<E> {
      *
      * @param key the primary key of the entity to delete
      */
+    @Override
     public void deleteEntity(String key) {
-        String tableName = currentTable;
-
-        String sql = String.format("DELETE FROM %s WHERE id = ?;", tableName);
+        TableStatements sql = tableStatements;
+        String tableName = sql.getTable();
+        long start = metrics.start(tableName, OperationMetrics.DELETE);
+        SQLChangelog<E> log = changelog;
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, key);
-            statement.executeUpdate();
+        QueryTrace trace = profiler.begin(sql.getDeleteById());
+        try {
+            long waitStart = metrics.start(tableName, OperationMetrics.CONNECTION_WAIT);
+            statements.beginWrite(log.isEnabled());
+            try {
+                PreparedStatement statement = statements.prepare(sql.getDeleteById(), metrics, tableName);
+                try {
+                    synchronized (statement) {
+                        metrics.stop(tableName, OperationMetrics.CONNECTION_WAIT, waitStart);
+                        trace.started(connection);
+                        statement.setString(1, key);
+                        trace.parameter(key);
+                        trace.mapped();
+                        int rows = statement.executeUpdate();
+                        trace.executed();
+                        trace.affected(rows);
+                        trace.finish();
+                        metrics.count(tableName, OperationMetrics.ROWS_WRITTEN, rows);
+                        if (rows > 0) {
+                            log.append(key, ChangeType.DELETE, metrics);
+                        }
+                    }
+                } finally {
+                    statements.release(statement);
+                }
+                statements.commitWrite();
+            } finally {
+                statements.endWrite();
+            }
         } catch (SQLException e) {
+            metrics.error(tableName, OperationMetrics.DELETE);
             e.printStackTrace();
         }
+        profiler.finish(tableName, trace, EXPLAIN_PREFIX);
+        metrics.stop(tableName, OperationMetrics.DELETE, start);
     }
 }
\ No newline at end of file
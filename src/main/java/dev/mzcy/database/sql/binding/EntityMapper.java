@@ -0,0 +1,193 @@
+package dev.mzcy.database.sql.binding;
+
+import dev.mzcy.database.sql.annotation.TableField;
+import dev.mzcy.database.sql.profiler.QueryTrace;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the {@link TableField} fields of an entity class to statement parameters and result
+ * columns. All reflection metadata is resolved once per class, so binding and reading a row
+ * allocates nothing besides the entity itself and the values the driver hands out.
+ *
+ * @param <E> the type of the entity
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class EntityMapper<E> {
+
+    private static final ClassValue<EntityMapper<?>> MAPPERS = new ClassValue<>() {
+        @Override
+        protected EntityMapper<?> computeValue(Class<?> type) {
+            return new EntityMapper<>(type);
+        }
+    };
+
+    Class<E> entityClass;
+    Constructor<E> constructor;
+    FieldBinding[] bindings;
+    FieldBinding keyBinding;
+
+    /** The comma separated column names, in binding order. */
+    @Getter
+    String columns;
+
+    /** The comma separated parameter placeholders, one per column. */
+    @Getter
+    String placeholders;
+
+    /**
+     * Constructs an EntityMapper instance.
+     *
+     * @param entityClass the entity class
+     */
+    private EntityMapper(Class<E> entityClass) {
+        this.entityClass = entityClass;
+        this.constructor = findConstructor(entityClass);
+        List<FieldBinding> bindings = new ArrayList<>();
+        for (Field field : entityClass.getDeclaredFields()) {
+            if (field.isAnnotationPresent(TableField.class)) {
+                bindings.add(new FieldBinding(field));
+            }
+        }
+        this.bindings = bindings.toArray(new FieldBinding[0]);
+        this.keyBinding = bindings.stream().filter(binding -> binding.getColumn().equals("id")).findFirst().orElse(null);
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        for (FieldBinding binding : this.bindings) {
+            if (!columns.isEmpty()) {
+                columns.append(",");
+                placeholders.append(",");
+            }
+            columns.append(binding.getColumn());
+            placeholders.append("?");
+        }
+        this.columns = columns.toString();
+        this.placeholders = placeholders.toString();
+    }
+
+    /**
+     * Gets the mapper of an entity class, building it on first use.
+     *
+     * @param entityClass the entity class
+     * @param <E> the type of the entity
+     * @return the mapper
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> EntityMapper<E> of(Class<? extends E> entityClass) {
+        return (EntityMapper<E>) MAPPERS.get(entityClass);
+    }
+
+    /**
+     * Gets the number of mapped columns.
+     *
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return bindings.length;
+    }
+
+    /**
+     * Binds all mapped fields of the entity to consecutive statement parameters.
+     *
+     * @param statement the statement
+     * @param entity the entity
+     * @param firstIndex the index of the first parameter
+     * @throws SQLException if a parameter could not be set
+     */
+    public void bind(PreparedStatement statement, E entity, int firstIndex) throws SQLException {
+        try {
+            for (int i = 0; i < bindings.length; i++) {
+                bindings[i].bind(statement, firstIndex + i, entity);
+            }
+        } catch (IllegalAccessException e) {
+            throw new SQLException("Could not read field of " + entityClass.getName(), e);
+        }
+    }
+
+    /**
+     * Reads consecutive result columns into a new entity instance.
+     *
+     * @param resultSet the result set positioned on a row
+     * @param firstColumn the index of the first mapped column
+     * @return the entity
+     * @throws SQLException if a column could not be read or the entity could not be created
+     */
+    public E read(ResultSet resultSet, int firstColumn) throws SQLException {
+        if (constructor == null) {
+            throw new SQLException("No no-args constructor found in " + entityClass.getName());
+        }
+        try {
+            E entity = constructor.newInstance();
+            for (int i = 0; i < bindings.length; i++) {
+                bindings[i].read(resultSet, firstColumn + i, entity);
+            }
+            return entity;
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("Could not create " + entityClass.getName(), e);
+        }
+    }
+
+    /**
+     * Reads the primary key of an entity, the field mapped to the {@code id} column.
+     *
+     * @param entity the entity
+     * @return the primary key as a string, or null if there is no {@code id} column or it is null
+     */
+    public String getKey(E entity) {
+        if (keyBinding == null) {
+            return null;
+        }
+        try {
+            Object key = keyBinding.value(entity);
+            return key == null ? null : String.valueOf(key);
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Records the parameters {@link #bind(PreparedStatement, Object, int)} sets on a trace, so the
+     * profiler can re-run the statement. Does nothing if the trace is disabled.
+     *
+     * @param entity the entity
+     * @param trace the query trace
+     */
+    public void trace(E entity, QueryTrace trace) {
+        if (!trace.isEnabled()) {
+            return;
+        }
+        try {
+            for (FieldBinding binding : bindings) {
+                trace.parameter(binding.value(entity));
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds and opens the no-args constructor of an entity class.
+     *
+     * @param entityClass the entity class
+     * @param <E> the type of the entity
+     * @return the constructor, or null if there is none
+     */
+    private static <E> Constructor<E> findConstructor(Class<E> entityClass) {
+        try {
+            Constructor<E> constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
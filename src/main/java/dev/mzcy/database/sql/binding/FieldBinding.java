@@ -0,0 +1,126 @@
+package dev.mzcy.database.sql.binding;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Binds a single entity field to a statement parameter and reads it back from a result column,
+ * using the typed JDBC setters and getters for primitives so no values are boxed.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+class FieldBinding {
+
+    @Getter
+    String column;
+    Field field;
+    Kind kind;
+
+    /**
+     * Constructs a FieldBinding instance.
+     *
+     * @param field the entity field, made accessible by this constructor
+     */
+    FieldBinding(Field field) {
+        field.setAccessible(true);
+        this.column = field.getName();
+        this.field = field;
+        this.kind = Kind.of(field.getType());
+    }
+
+    /**
+     * Binds the field value of the entity to a statement parameter.
+     *
+     * @param statement the statement
+     * @param index the parameter index
+     * @param entity the entity
+     * @throws SQLException if the parameter could not be set
+     * @throws IllegalAccessException if the field could not be read
+     */
+    void bind(PreparedStatement statement, int index, Object entity) throws SQLException, IllegalAccessException {
+        switch (kind) {
+            case INT -> statement.setInt(index, field.getInt(entity));
+            case LONG -> statement.setLong(index, field.getLong(entity));
+            case DOUBLE -> statement.setDouble(index, field.getDouble(entity));
+            case FLOAT -> statement.setFloat(index, field.getFloat(entity));
+            case SHORT -> statement.setShort(index, field.getShort(entity));
+            case BYTE -> statement.setByte(index, field.getByte(entity));
+            case BOOLEAN -> statement.setBoolean(index, field.getBoolean(entity));
+            case STRING -> statement.setString(index, (String) field.get(entity));
+            case BYTES -> statement.setBytes(index, (byte[]) field.get(entity));
+            case OBJECT -> statement.setObject(index, field.get(entity));
+        }
+    }
+
+    /**
+     * Reads a result column into the field of the entity.
+     *
+     * @param resultSet the result set positioned on a row
+     * @param columnIndex the column index
+     * @param entity the entity
+     * @throws SQLException if the column could not be read
+     * @throws IllegalAccessException if the field could not be written
+     */
+    void read(ResultSet resultSet, int columnIndex, Object entity) throws SQLException, IllegalAccessException {
+        switch (kind) {
+            case INT -> field.setInt(entity, resultSet.getInt(columnIndex));
+            case LONG -> field.setLong(entity, resultSet.getLong(columnIndex));
+            case DOUBLE -> field.setDouble(entity, resultSet.getDouble(columnIndex));
+            case FLOAT -> field.setFloat(entity, resultSet.getFloat(columnIndex));
+            case SHORT -> field.setShort(entity, resultSet.getShort(columnIndex));
+            case BYTE -> field.setByte(entity, resultSet.getByte(columnIndex));
+            case BOOLEAN -> field.setBoolean(entity, resultSet.getBoolean(columnIndex));
+            case STRING -> field.set(entity, resultSet.getString(columnIndex));
+            case BYTES -> field.set(entity, resultSet.getBytes(columnIndex));
+            case OBJECT -> {
+                Object value = resultSet.getObject(columnIndex);
+                if (value != null && !field.getType().isInstance(value)) {
+                    // Let the driver convert, e.g. a Long column into an Integer field
+                    value = resultSet.getObject(columnIndex, field.getType());
+                }
+                field.set(entity, value);
+            }
+        }
+    }
+
+    /**
+     * Reads the field value of the entity, boxing primitives. Only used for diagnostics.
+     *
+     * @param entity the entity
+     * @return the field value
+     * @throws IllegalAccessException if the field could not be read
+     */
+    Object value(Object entity) throws IllegalAccessException {
+        return field.get(entity);
+    }
+
+    /**
+     * The JDBC accessor pair used for a field type.
+     */
+    private enum Kind {
+        INT, LONG, DOUBLE, FLOAT, SHORT, BYTE, BOOLEAN, STRING, BYTES, OBJECT;
+
+        /**
+         * Picks the accessor pair for a field type.
+         *
+         * @param type the field type
+         * @return the kind
+         */
+        static Kind of(Class<?> type) {
+            if (type == int.class) return INT;
+            if (type == long.class) return LONG;
+            if (type == double.class) return DOUBLE;
+            if (type == float.class) return FLOAT;
+            if (type == short.class) return SHORT;
+            if (type == byte.class) return BYTE;
+            if (type == boolean.class) return BOOLEAN;
+            if (type == String.class) return STRING;
+            if (type == byte[].class) return BYTES;
+            return OBJECT;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package dev.mzcy.database.sql.binding;
+
+import dev.mzcy.database.metrics.OperationMetrics;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps prepared statements of a connection open for reuse, keyed by SQL text. Statements are
+ * shared, so callers must hold the statement's monitor while binding, executing and reading it,
+ * and hand it back with {@link #release(PreparedStatement)} once done:
+ * <pre>{@code
+ * PreparedStatement statement = statements.prepare(sql, metrics, table);
+ * try {
+ *     synchronized (statement) {
+ *         // bind, execute and read the statement
+ *     }
+ * } finally {
+ *     statements.release(statement);
+ * }
+ * }</pre>
+ * A statement evicted while in use is closed by its last release, so eviction never closes a
+ * statement under a running query.
+ * <p>
+ * Writes to the connection are serialized by a write lock, taken with
+ * {@link #beginWrite(boolean)}, so a write that spans several statements can run in its own
+ * transaction without other writers' statements ending up in it:
+ * <pre>{@code
+ * statements.beginWrite(true);
+ * try {
+ *     // execute the statements
+ *     statements.commitWrite();
+ * } finally {
+ *     statements.endWrite();
+ * }
+ * }</pre>
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class StatementCache implements AutoCloseable {
+
+    /**
+     * Default number of statements kept open per connection, enough for the statements of
+     * several tables, about sixteen each.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    @Getter
+    Connection connection;
+    @Getter
+    int capacity;
+    LinkedHashMap<String, PreparedStatement> statements;
+    IdentityHashMap<PreparedStatement, Integer> inUse;
+    Set<PreparedStatement> evicted;
+    ReentrantLock writeLock;
+    @NonFinal
+    boolean transaction;
+
+    /**
+     * Constructs a StatementCache instance.
+     *
+     * @param connection the connection to prepare statements on
+     * @param capacity the maximum number of open statements
+     */
+    public StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+        this.inUse = new IdentityHashMap<>();
+        this.evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.writeLock = new ReentrantLock();
+    }
+
+    /**
+     * Constructs a StatementCache instance with the {@link #DEFAULT_CAPACITY}.
+     *
+     * @param connection the connection to prepare statements on
+     */
+    public StatementCache(Connection connection) {
+        this(connection, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Gets the cached statement for the SQL text, preparing it on first use, and marks it in use
+     * until {@link #release(PreparedStatement)}. The least recently used statement is evicted once
+     * the cache is full, and closed as soon as it is no longer in use.
+     *
+     * @param sql the SQL text
+     * @param metrics the metrics to report hits and misses to
+     * @param table the table to tag the metrics with
+     * @return the prepared statement
+     * @throws SQLException if the statement could not be prepared
+     */
+    public synchronized PreparedStatement prepare(String sql, OperationMetrics metrics, String table) throws SQLException {
+        PreparedStatement statement = load(sql, metrics, table);
+        inUse.merge(statement, 1, Integer::sum);
+        return statement;
+    }
+
+    /**
+     * Prepares the statement for the SQL text ahead of its first use, without marking it in use.
+     *
+     * @param sql the SQL text
+     * @param metrics the metrics to report hits and misses to
+     * @param table the table to tag the metrics with
+     * @throws SQLException if the statement could not be prepared
+     */
+    public synchronized void preload(String sql, OperationMetrics metrics, String table) throws SQLException {
+        load(sql, metrics, table);
+    }
+
+    /**
+     * Hands back a statement obtained from {@link #prepare(String, OperationMetrics, String)},
+     * closing it if it was evicted meanwhile and this was its last use.
+     *
+     * @param statement the statement
+     */
+    public synchronized void release(PreparedStatement statement) {
+        Integer uses = inUse.get(statement);
+        if (uses == null) {
+            return;
+        }
+        if (uses > 1) {
+            inUse.put(statement, uses - 1);
+            return;
+        }
+        inUse.remove(statement);
+        if (evicted.remove(statement)) {
+            closeQuietly(statement);
+        }
+    }
+
+    /**
+     * Gets the cached statement for the SQL text, preparing it on a miss and evicting the least
+     * recently used statement if the cache is full.
+     *
+     * @param sql the SQL text
+     * @param metrics the metrics to report hits and misses to
+     * @param table the table to tag the metrics with
+     * @return the prepared statement
+     * @throws SQLException if the statement could not be prepared
+     */
+    private PreparedStatement load(String sql, OperationMetrics metrics, String table) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            metrics.count(table, OperationMetrics.STATEMENT_CACHE_HIT, 1);
+            return statement;
+        }
+        metrics.count(table, OperationMetrics.STATEMENT_CACHE_MISS, 1);
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        if (statements.size() > capacity) {
+            Map.Entry<String, PreparedStatement> eldest = statements.entrySet().iterator().next();
+            statements.remove(eldest.getKey());
+            if (inUse.containsKey(eldest.getValue())) {
+                evicted.add(eldest.getValue());
+            } else {
+                closeQuietly(eldest.getValue());
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * Takes the write lock of the connection, waiting for other writers, and opens a transaction
+     * if requested. A write nested in another write, or started while auto-commit is off, joins
+     * the surrounding transaction. Every call must be paired with {@link #endWrite()}.
+     *
+     * @param transactional true to run the write in a transaction
+     * @throws SQLException if the transaction could not be opened
+     */
+    public void beginWrite(boolean transactional) throws SQLException {
+        writeLock.lock();
+        if (!transactional || writeLock.getHoldCount() > 1) {
+            return;
+        }
+        try {
+            if (connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                transaction = true;
+            }
+        } catch (SQLException e) {
+            writeLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Commits the transaction opened by {@link #beginWrite(boolean)}, if this write opened one.
+     *
+     * @throws SQLException if the transaction could not be committed
+     */
+    public void commitWrite() throws SQLException {
+        if (transaction && writeLock.getHoldCount() == 1) {
+            connection.commit();
+            transaction = false;
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Rolls back the transaction of this write if it was not committed, and releases the write lock.
+     */
+    public void endWrite() {
+        try {
+            if (transaction && writeLock.getHoldCount() == 1) {
+                transaction = false;
+                try {
+                    connection.rollback();
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Closes all cached statements, including evicted ones still in use.
+     */
+    @Override
+    public synchronized void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        for (PreparedStatement statement : evicted) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        evicted.clear();
+        inUse.clear();
+    }
+
+    /**
+     * Closes a statement, printing the error if that fails.
+     *
+     * @param statement the statement
+     */
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
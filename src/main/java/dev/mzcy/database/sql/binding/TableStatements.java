@@ -0,0 +1,126 @@
+package dev.mzcy.database.sql.binding;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The SQL text of the statements a SQL database runs against one table. Built once per table so
+ * the hot paths neither format strings nor miss the {@link StatementCache}.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class TableStatements {
+
+    /** Maximum number of primary keys per {@link #getSelectByIds(int)} statement. */
+    public static final int MAX_IDS_PER_SELECT = 128;
+
+    /** The table name. */
+    String table;
+
+    /** Whether the table has an {@code expires_at} column that reads must filter on. */
+    boolean expiring;
+
+    /** Inserts or replaces a row, one parameter per mapped column. Clears the expiry of an expiring table. */
+    String upsert;
+
+    /** Inserts or replaces a row with one parameter per mapped column followed by the {@code expires_at} deadline. */
+    String upsertExpiring;
+
+    /** Selects the mapped columns of a row by primary key, followed by the current time if the table is expiring. */
+    String selectById;
+
+    /**
+     * Selects the primary key followed by the mapped columns of the rows with any of 1, 2, 4 ... up
+     * to {@link #MAX_IDS_PER_SELECT} primary keys, followed by the current time if the table is
+     * expiring. Key counts are rounded up to a power of two so few statements need to be cached.
+     */
+    @Getter(lombok.AccessLevel.NONE)
+    List<String> selectByIds;
+
+    /** Selects the first page: the primary key followed by the mapped columns, limited by a parameter that follows the current time if the table is expiring. */
+    String selectFirstPage;
+
+    /** Selects the page after a primary key, limited by a parameter that follows the current time if the table is expiring. */
+    String selectPageAfter;
+
+    /** Deletes a row by primary key. */
+    String deleteById;
+
+    /**
+     * Constructs a TableStatements instance.
+     *
+     * @param table the table name
+     * @param mapper the entity mapper
+     * @param upsertVerb the dialect-specific insert-or-replace keyword, e.g. {@code "REPLACE INTO"}
+     * @param expiring whether reads must skip rows whose {@code expires_at} passed
+     */
+    public TableStatements(String table, EntityMapper<?> mapper, String upsertVerb, boolean expiring) {
+        String notExpired = expiring ? " AND (expires_at IS NULL OR expires_at > ?)" : "";
+        this.table = table;
+        this.expiring = expiring;
+        this.upsert = String.format("%s %s (%s) VALUES (%s);", upsertVerb, table, mapper.getColumns(), mapper.getPlaceholders());
+        this.upsertExpiring = String.format("%s %s (%s,expires_at) VALUES (%s,?);", upsertVerb, table, mapper.getColumns(), mapper.getPlaceholders());
+        this.selectById = String.format("SELECT %s FROM %s WHERE id = ?%s;", mapper.getColumns(), table, notExpired);
+        this.selectByIds = new ArrayList<>();
+        for (int count = 1; count <= MAX_IDS_PER_SELECT; count *= 2) {
+            String placeholders = String.join(",", Collections.nCopies(count, "?"));
+            this.selectByIds.add(String.format("SELECT id,%s FROM %s WHERE id IN (%s)%s;", mapper.getColumns(), table, placeholders, notExpired));
+        }
+        this.selectFirstPage = String.format("SELECT id,%s FROM %s%s ORDER BY id LIMIT ?;", mapper.getColumns(), table,
+                expiring ? " WHERE (expires_at IS NULL OR expires_at > ?)" : "");
+        this.selectPageAfter = String.format("SELECT id,%s FROM %s WHERE id > ?%s ORDER BY id LIMIT ?;", mapper.getColumns(), table, notExpired);
+        this.deleteById = String.format("DELETE FROM %s WHERE id = ?;", table);
+    }
+
+    /**
+     * Gets the statement selecting the rows of the given number of primary keys. It has room for
+     * the next power of two keys, see {@link #padKeys(List)}.
+     *
+     * @param count the number of primary keys, at most {@link #MAX_IDS_PER_SELECT}
+     * @return the SQL text
+     */
+    public String getSelectByIds(int count) {
+        return selectByIds.get(32 - Integer.numberOfLeadingZeros(count - 1));
+    }
+
+    /**
+     * Pads primary keys to the next power of two by repeating the last one, matching the
+     * parameters of {@link #getSelectByIds(int)}.
+     *
+     * @param keys the primary keys, at least one
+     * @return the padded keys
+     */
+    public static List<String> padKeys(List<String> keys) {
+        int slots = Integer.highestOneBit(keys.size() * 2 - 1);
+        List<String> padded = new ArrayList<>(slots);
+        padded.addAll(keys);
+        while (padded.size() < slots) {
+            padded.add(keys.get(keys.size() - 1));
+        }
+        return padded;
+    }
+
+    /**
+     * Gets the statements that only read, which may run on a replica.
+     *
+     * @return the SQL texts
+     */
+    public List<String> getReadStatements() {
+        List<String> reads = new ArrayList<>(List.of(selectById, selectFirstPage, selectPageAfter));
+        reads.addAll(selectByIds);
+        return reads;
+    }
+
+    /**
+     * Gets the statements that write, which must run on the primary.
+     *
+     * @return the SQL texts
+     */
+    public List<String> getWriteStatements() {
+        return expiring ? List.of(upsert, upsertExpiring, deleteById) : List.of(upsert, deleteById);
+    }
+}
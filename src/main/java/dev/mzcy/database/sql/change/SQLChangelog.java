@@ -0,0 +1,479 @@
+package dev.mzcy.database.sql.change;
+
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeFeed;
+import dev.mzcy.database.change.ChangeType;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.sql.binding.StatementCache;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lightweight changelog table next to an entity table. Every save and delete appends the key of
+ * the changed entity in the same transaction as the change itself; a poller reads new rows
+ * incrementally by sequence number and publishes them to a {@link ChangeFeed}, so all nodes
+ * writing to the same table see each other's changes.
+ * <p>
+ * Sequence numbers are handed out when a row is inserted, but concurrent transactions may commit
+ * out of order, so a poll can see sequence 11 before sequence 10 is visible. The poller remembers
+ * such gaps and reads them again on later polls for up to {@link #GAP_TIMEOUT}; a change found
+ * that way is published late, after changes with higher sequence numbers. Gaps left by rolled
+ * back transactions are given up after the timeout.
+ * <p>
+ * The poller and the retention share the connection of the entity table. They read under its
+ * write lock, so they never see the rows of a transaction still open on that connection, which
+ * could be rolled back after they were published.
+ * <p>
+ * Changes are only logged once the changelog is enabled, either explicitly or by the first
+ * subscription. Nodes that only write must enable it too. Every node that enabled the changelog
+ * deletes rows older than the retention period in the background.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class SQLChangelog<E> implements AutoCloseable {
+
+    /** Default delay between two polls. */
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofMillis(500);
+
+    /** Default age after which changelog rows are deleted. */
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(1);
+
+    /** How long a gap in the sequence is read again before the poller gives up on it. */
+    public static final Duration GAP_TIMEOUT = Duration.ofMinutes(1);
+
+    /** Maximum number of rows read per poll query. */
+    private static final int POLL_BATCH_SIZE = 1000;
+
+    /** Maximum number of gaps tracked at once; larger jumps are taken as the sequence skipping ahead. */
+    private static final int MAX_GAPS = 10_000;
+
+    /** Maximum number of gaps read again per query. */
+    private static final int GAP_BATCH_SIZE = 100;
+
+    /** Delay between two retention runs. */
+    private static final Duration RETENTION_INTERVAL = Duration.ofMinutes(1);
+
+    @Getter
+    String table;
+    String createSql;
+    String insertSql;
+    String pollSql;
+    String maxSequenceSql;
+    String pruneScanSql;
+    String pruneSql;
+    Connection connection;
+    StatementCache statements;
+    ChangeFeed<E> feed;
+    Duration pollInterval;
+    TreeMap<Long, Long> gaps;
+    @NonFinal
+    volatile boolean enabled;
+    @NonFinal
+    @Getter
+    volatile Duration retention;
+    @NonFinal
+    volatile long pinnedSequence;
+    @NonFinal
+    long lastSequence;
+    @NonFinal
+    ScheduledExecutorService scheduler;
+    @NonFinal
+    boolean polling;
+
+    /**
+     * Constructs a SQLChangelog instance for an entity table. The changelog table is called
+     * {@code <entityTable>_changelog}.
+     *
+     * @param connection the connection to create the table on
+     * @param statements the statement cache of the connection
+     * @param entityTable the entity table
+     * @param sequenceColumn the dialect-specific definition of an auto-incrementing primary key
+     * @param keyColumnType the dialect-specific type of the entity key column
+     * @param feed the feed to publish polled changes to
+     * @param pollInterval the delay between two polls
+     * @param retention the age after which rows are deleted, or null to keep them
+     */
+    public SQLChangelog(Connection connection, StatementCache statements, String entityTable, String sequenceColumn, String keyColumnType,
+                        ChangeFeed<E> feed, Duration pollInterval, Duration retention) {
+        this.table = entityTable + "_changelog";
+        this.createSql = String.format("CREATE TABLE IF NOT EXISTS %s (seq %s, entity_key %s NOT NULL, change_type CHAR(1) NOT NULL, changed_at BIGINT NOT NULL);",
+                table, sequenceColumn, keyColumnType);
+        this.insertSql = String.format("INSERT INTO %s (entity_key, change_type, changed_at) VALUES (?, ?, ?);", table);
+        this.pollSql = String.format("SELECT seq, entity_key, change_type, changed_at FROM %s WHERE seq > ? ORDER BY seq LIMIT ?;", table);
+        this.maxSequenceSql = String.format("SELECT MAX(seq) FROM %s;", table);
+        this.pruneScanSql = String.format("SELECT seq, changed_at FROM %s WHERE seq > ? ORDER BY seq LIMIT ?;", table);
+        this.pruneSql = String.format("DELETE FROM %s WHERE seq <= ?;", table);
+        this.connection = connection;
+        this.statements = statements;
+        this.feed = feed;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+        this.pinnedSequence = Long.MAX_VALUE;
+        this.gaps = new TreeMap<>();
+    }
+
+    /**
+     * Creates the changelog table if needed, starts logging changes and starts deleting rows
+     * older than the retention period.
+     */
+    public synchronized void enable() {
+        if (enabled) {
+            return;
+        }
+        try {
+            statements.beginWrite(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(createSql);
+                enabled = true;
+            } finally {
+                statements.endWrite();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        scheduler().scheduleWithFixedDelay(this::applyRetention, 0L, RETENTION_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks if changes are logged.
+     *
+     * @return true if the changelog is enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the age after which rows are deleted. Nodes that poll less often than that miss changes.
+     *
+     * @param retention the retention period, or null to keep rows until {@link #prune(Duration)} is called
+     */
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * Keeps the rows after the given sequence number, whatever their age, until another one is
+     * pinned. Used to keep the changes the next incremental snapshot has to copy.
+     *
+     * @param sequence the last sequence number whose row may be deleted
+     */
+    public void pin(long sequence) {
+        this.pinnedSequence = sequence;
+    }
+
+    /**
+     * Enables the changelog and starts polling it. Only changes logged after this call are published.
+     */
+    public synchronized void start() {
+        enable();
+        if (polling || !enabled) {
+            return;
+        }
+        lastSequence = readMaxSequence();
+        polling = true;
+        scheduler().scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends a change if the changelog is enabled. Callers run it inside the write of the change,
+     * between {@link StatementCache#beginWrite(boolean)} and {@link StatementCache#commitWrite()},
+     * so the change and its log entry are committed together.
+     *
+     * @param key the primary key of the changed entity
+     * @param type the kind of change
+     * @param metrics the metrics to report statement cache usage to
+     * @throws SQLException if the entry could not be written
+     */
+    public void append(String key, ChangeType type, OperationMetrics metrics) throws SQLException {
+        if (!enabled) {
+            return;
+        }
+        PreparedStatement statement = statements.prepare(insertSql, metrics, table);
+        try {
+            synchronized (statement) {
+                statement.setString(1, key);
+                statement.setString(2, type == ChangeType.SAVE ? "S" : "D");
+                statement.setLong(3, System.currentTimeMillis());
+                statement.executeUpdate();
+            }
+        } finally {
+            statements.release(statement);
+        }
+    }
+
+    /**
+     * Appends the same kind of change for several keys as one JDBC batch, if the changelog is
+     * enabled. Callers run it inside the write of the changes, like {@link #append(String, ChangeType, OperationMetrics)}.
+     *
+     * @param keys the primary keys of the changed entities
+     * @param type the kind of change
+     * @param metrics the metrics to report statement cache usage to
+     * @throws SQLException if the entries could not be written
+     */
+    public void appendAll(Collection<String> keys, ChangeType type, OperationMetrics metrics) throws SQLException {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        long changedAt = System.currentTimeMillis();
+        PreparedStatement statement = statements.prepare(insertSql, metrics, table);
+        try {
+            synchronized (statement) {
+                try {
+                    for (String key : keys) {
+                        statement.setString(1, key);
+                        statement.setString(2, type == ChangeType.SAVE ? "S" : "D");
+                        statement.setLong(3, changedAt);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                } finally {
+                    statement.clearBatch();
+                }
+            }
+        } finally {
+            statements.release(statement);
+        }
+    }
+
+    /**
+     * Prepares the insert statement ahead of the first change, if the changelog is enabled.
+     *
+     * @param metrics the metrics to report statement cache usage to
+     * @throws SQLException if the statement could not be prepared
+     */
+    public void prime(OperationMetrics metrics) throws SQLException {
+        if (enabled) {
+            statements.preload(insertSql, metrics, table);
+        }
+    }
+
+    /**
+     * Deletes changelog rows older than the given age, oldest first, in batches by sequence
+     * number. Nodes that poll less often than that miss them. Rows after the
+     * {@linkplain #pin(long) pinned} sequence number are kept.
+     *
+     * @param maxAge the age after which rows are deleted
+     */
+    public void prune(Duration maxAge) {
+        long cutoff = System.currentTimeMillis() - maxAge.toMillis();
+        long pinned = pinnedSequence;
+        try (PreparedStatement scan = connection.prepareStatement(pruneScanSql);
+             PreparedStatement delete = connection.prepareStatement(pruneSql)) {
+            long from = Long.MIN_VALUE;
+            boolean more = true;
+            while (more) {
+                long bound = Long.MIN_VALUE;
+                int read = 0;
+                statements.beginWrite(false);
+                try {
+                    scan.setLong(1, from);
+                    scan.setInt(2, POLL_BATCH_SIZE);
+                    try (ResultSet resultSet = scan.executeQuery()) {
+                        while (resultSet.next()) {
+                            read++;
+                            if (resultSet.getLong(2) >= cutoff || resultSet.getLong(1) > pinned) {
+                                more = false;
+                                break;
+                            }
+                            bound = resultSet.getLong(1);
+                        }
+                    }
+                    if (bound != Long.MIN_VALUE) {
+                        delete.setLong(1, bound);
+                        delete.executeUpdate();
+                    }
+                } finally {
+                    statements.endWrite();
+                }
+                more &= read == POLL_BATCH_SIZE;
+                if (bound == Long.MIN_VALUE) {
+                    break;
+                }
+                from = bound;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops polling and deleting old rows. Changes are still logged.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        polling = false;
+    }
+
+    /**
+     * Gets the background thread that polls and applies the retention, creating it on first use.
+     *
+     * @return the scheduler
+     */
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "changelog-" + table);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Deletes rows older than the retention period, if one is set.
+     */
+    private void applyRetention() {
+        Duration maxAge = retention;
+        if (maxAge != null) {
+            prune(maxAge);
+        }
+    }
+
+    /**
+     * Publishes the rows that filled earlier gaps, then all rows logged since the last poll.
+     */
+    private void poll() {
+        try {
+            long now = System.currentTimeMillis();
+            if (!gaps.isEmpty()) {
+                pollGaps(now);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(pollSql)) {
+                int read;
+                do {
+                    read = 0;
+                    statements.beginWrite(false);
+                    try {
+                        statement.setLong(1, lastSequence);
+                        statement.setInt(2, POLL_BATCH_SIZE);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                long sequence = resultSet.getLong(1);
+                                trackGaps(sequence, now);
+                                lastSequence = sequence;
+                                publish(resultSet);
+                                read++;
+                            }
+                        }
+                    } finally {
+                        statements.endWrite();
+                    }
+                } while (read == POLL_BATCH_SIZE);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Remembers the sequence numbers skipped between the last row read and the given one.
+     *
+     * @param sequence the sequence number of the row just read
+     * @param now the current time in milliseconds
+     */
+    private void trackGaps(long sequence, long now) {
+        if (lastSequence == 0L) {
+            return;
+        }
+        long missing = sequence - lastSequence - 1;
+        if (missing <= 0 || gaps.size() + missing > MAX_GAPS) {
+            return;
+        }
+        for (long gap = lastSequence + 1; gap < sequence; gap++) {
+            gaps.put(gap, now);
+        }
+    }
+
+    /**
+     * Reads the tracked gaps again, publishes the rows that were committed meanwhile and gives up
+     * on gaps older than {@link #GAP_TIMEOUT}.
+     *
+     * @param now the current time in milliseconds
+     * @throws SQLException if the gaps could not be read
+     */
+    private void pollGaps(long now) throws SQLException {
+        List<Long> pending = new ArrayList<>(gaps.keySet());
+        for (int offset = 0; offset < pending.size(); offset += GAP_BATCH_SIZE) {
+            List<Long> batch = pending.subList(offset, Math.min(offset + GAP_BATCH_SIZE, pending.size()));
+            String sql = String.format("SELECT seq, entity_key, change_type, changed_at FROM %s WHERE seq IN (%s) ORDER BY seq;",
+                    table, String.join(", ", Collections.nCopies(batch.size(), "?")));
+            statements.beginWrite(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    statement.setLong(i + 1, batch.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        gaps.remove(resultSet.getLong(1));
+                        publish(resultSet);
+                    }
+                }
+            } finally {
+                statements.endWrite();
+            }
+        }
+        long timeout = GAP_TIMEOUT.toMillis();
+        Iterator<Map.Entry<Long, Long>> iterator = gaps.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() > timeout) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Publishes the changelog row the result set is positioned on.
+     *
+     * @param resultSet the result set of {@code seq, entity_key, change_type, changed_at}
+     * @throws SQLException if the row could not be read
+     */
+    private void publish(ResultSet resultSet) throws SQLException {
+        ChangeType type = "D".equals(resultSet.getString(3)) ? ChangeType.DELETE : ChangeType.SAVE;
+        feed.publish(new ChangeEvent<>(type, resultSet.getString(2), null, Instant.ofEpochMilli(resultSet.getLong(4))));
+    }
+
+    /**
+     * Reads the highest sequence number logged so far.
+     *
+     * @return the sequence number, or 0 if the changelog is empty
+     */
+    private long readMaxSequence() {
+        try {
+            statements.beginWrite(false);
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(maxSequenceSql)) {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            } finally {
+                statements.endWrite();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package dev.mzcy.database.sql.expiry;
+
+import dev.mzcy.database.change.ChangeType;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.sql.binding.StatementCache;
+import dev.mzcy.database.sql.change.SQLChangelog;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry of rows saved with a time to live. The deadline is kept in an indexed
+ * {@value #COLUMN} column, added to the table the first time it is needed. A background sweeper
+ * deletes expired rows in small batches over the index: one batch per interval, and the next
+ * batch shortly after while a backlog remains, so expiry never holds locks for long.
+ * <p>
+ * While the changelog is enabled, each batch is deleted together with its changelog entries in
+ * one transaction, so subscribers see expired rows as deletes.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class SQLExpiry implements AutoCloseable {
+
+    /** The column holding the deadline in milliseconds since the epoch, NULL for rows that never expire. */
+    public static final String COLUMN = "expires_at";
+
+    /** Default delay between two sweeps while there is no backlog. */
+    public static final Duration DEFAULT_SWEEP_INTERVAL = Duration.ofSeconds(1);
+
+    /** Maximum number of rows deleted per batch. */
+    private static final int SWEEP_BATCH_SIZE = 500;
+
+    /** Delay before the next batch while a backlog remains. */
+    private static final long BACKLOG_DELAY_MILLIS = 50;
+
+    @Getter
+    String table;
+    String sweepSql;
+    String selectExpiredSql;
+    String deleteExpiredSql;
+    Connection connection;
+    StatementCache statements;
+    SQLChangelog<?> changelog;
+    Duration sweepInterval;
+    @NonFinal
+    volatile OperationMetrics metrics;
+    @NonFinal
+    volatile boolean enabled;
+    @NonFinal
+    ScheduledExecutorService sweeper;
+
+    /**
+     * Constructs a SQLExpiry instance and checks if the table already has the {@value #COLUMN}
+     * column. Sweeping begins with {@link #start()}.
+     *
+     * @param connection the connection to the primary, or null if it could not be opened, which
+     *                   leaves expiry disabled
+     * @param statements the statement cache of the connection
+     * @param table the table name
+     * @param sweepFormat the dialect-specific statement deleting a batch of expired rows, with the
+     *                    table as {@code %1$s} and the current time and batch size as parameters
+     * @param changelog the changelog of the table, which expired rows are logged to if it is enabled
+     * @param metrics the metrics to report sweeps to
+     * @param sweepInterval the delay between two sweeps
+     */
+    public SQLExpiry(Connection connection, StatementCache statements, String table, String sweepFormat,
+                     SQLChangelog<?> changelog, OperationMetrics metrics, Duration sweepInterval) {
+        this.table = table;
+        this.sweepSql = String.format(sweepFormat, table);
+        this.selectExpiredSql = String.format("SELECT id FROM %s WHERE %s <= ? ORDER BY %2$s LIMIT ?;", table, COLUMN);
+        this.deleteExpiredSql = String.format("DELETE FROM %s WHERE id = ? AND %s <= ?;", table, COLUMN);
+        this.connection = connection;
+        this.statements = statements;
+        this.changelog = changelog;
+        this.metrics = metrics;
+        this.sweepInterval = sweepInterval;
+        try {
+            this.enabled = connection != null && hasColumn();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Checks if the table has the {@value #COLUMN} column, so reads must filter on it.
+     *
+     * @return true if rows of the table can expire, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the metrics to report sweeps to.
+     *
+     * @param metrics the metrics
+     */
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds the indexed {@value #COLUMN} column if the table does not have it yet, and starts
+     * sweeping. Safe to run on several instances or nodes at once: if another one added the
+     * column or index first, that is used.
+     *
+     * @throws SQLException if the column or index could not be added, or there is no connection
+     */
+    public synchronized void enable() throws SQLException {
+        if (enabled) {
+            return;
+        }
+        if (connection == null) {
+            throw new SQLException("No connection to add " + COLUMN + " to " + table);
+        }
+        statements.beginWrite(false);
+        try (Statement statement = connection.createStatement()) {
+            if (!hasColumn()) {
+                try {
+                    statement.execute(String.format("ALTER TABLE %s ADD COLUMN %s BIGINT NULL;", table, COLUMN));
+                } catch (SQLException e) {
+                    if (!hasColumn()) {
+                        throw e;
+                    }
+                }
+            }
+            if (!hasIndex()) {
+                try {
+                    statement.execute(String.format("CREATE INDEX %1$s_%2$s ON %1$s (%2$s);", table, COLUMN));
+                } catch (SQLException e) {
+                    if (!hasIndex()) {
+                        throw e;
+                    }
+                }
+            }
+            enabled = true;
+        } finally {
+            statements.endWrite();
+        }
+        start();
+    }
+
+    /**
+     * Starts the sweeper thread if rows of the table can expire.
+     */
+    public synchronized void start() {
+        if (!enabled || sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-sweeper-" + table);
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.schedule(this::sweepAndReschedule, sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes one batch of expired rows.
+     *
+     * @return the number of deleted rows
+     */
+    public int sweep() {
+        OperationMetrics metrics = this.metrics;
+        long start = metrics.start(table, OperationMetrics.SWEEP);
+        int deleted = 0;
+        try {
+            boolean logged = changelog.isEnabled();
+            statements.beginWrite(logged);
+            try {
+                deleted = logged ? deleteLogged(metrics, System.currentTimeMillis()) : deleteBatch(metrics, System.currentTimeMillis());
+                statements.commitWrite();
+            } finally {
+                statements.endWrite();
+            }
+            metrics.count(table, OperationMetrics.EXPIRED, deleted);
+        } catch (SQLException | RuntimeException e) {
+            deleted = 0;
+            metrics.error(table, OperationMetrics.SWEEP);
+            e.printStackTrace();
+        }
+        metrics.stop(table, OperationMetrics.SWEEP, start);
+        return deleted;
+    }
+
+    /**
+     * Stops sweeping.
+     */
+    @Override
+    public synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Deletes one batch of expired rows with a single statement.
+     *
+     * @param metrics the metrics to report statement cache usage to
+     * @param now the current time in milliseconds
+     * @return the number of deleted rows
+     * @throws SQLException if the rows could not be deleted
+     */
+    private int deleteBatch(OperationMetrics metrics, long now) throws SQLException {
+        PreparedStatement statement = statements.prepare(sweepSql, metrics, table);
+        try {
+            synchronized (statement) {
+                statement.setLong(1, now);
+                statement.setInt(2, SWEEP_BATCH_SIZE);
+                return statement.executeUpdate();
+            }
+        } finally {
+            statements.release(statement);
+        }
+    }
+
+    /**
+     * Selects one batch of expired rows, then deletes them and appends a delete to the changelog
+     * for each, both as JDBC batches. Runs inside the caller's transaction.
+     *
+     * @param metrics the metrics to report statement cache usage to
+     * @param now the current time in milliseconds
+     * @return the number of deleted rows
+     * @throws SQLException if the rows could not be deleted or logged
+     */
+    private int deleteLogged(OperationMetrics metrics, long now) throws SQLException {
+        List<String> expired = new ArrayList<>();
+        PreparedStatement select = statements.prepare(selectExpiredSql, metrics, table);
+        try {
+            synchronized (select) {
+                select.setLong(1, now);
+                select.setInt(2, SWEEP_BATCH_SIZE);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        expired.add(resultSet.getString(1));
+                    }
+                }
+            }
+        } finally {
+            statements.release(select);
+        }
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        List<String> deleted = new ArrayList<>(expired.size());
+        PreparedStatement delete = statements.prepare(deleteExpiredSql, metrics, table);
+        try {
+            synchronized (delete) {
+                try {
+                    for (String key : expired) {
+                        delete.setString(1, key);
+                        delete.setLong(2, now);
+                        delete.addBatch();
+                    }
+                    int[] counts = delete.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        // A row saved again since the select is not deleted. If the driver reports no count,
+                        // the delete is logged anyway: a needless event only drops a cached copy
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            deleted.add(expired.get(i));
+                        }
+                    }
+                } finally {
+                    delete.clearBatch();
+                }
+            }
+        } finally {
+            statements.release(delete);
+        }
+        changelog.appendAll(deleted, ChangeType.DELETE, metrics);
+        return deleted.size();
+    }
+
+    /**
+     * Runs a sweep and schedules the next one, sooner if the batch was full. The next sweep is
+     * scheduled whatever the outcome, so a failure never ends expiry.
+     */
+    private void sweepAndReschedule() {
+        long delay = sweepInterval.toMillis();
+        try {
+            if (sweep() >= SWEEP_BATCH_SIZE) {
+                delay = BACKLOG_DELAY_MILLIS;
+            }
+        } finally {
+            synchronized (this) {
+                if (sweeper != null) {
+                    sweeper.schedule(this::sweepAndReschedule, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the table metadata for the {@value #COLUMN} column.
+     *
+     * @return true if the column exists
+     * @throws SQLException if the metadata could not be read
+     */
+    private boolean hasColumn() throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), null, table, null)) {
+            while (columns.next()) {
+                if (COLUMN.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Checks the table metadata for an index on the {@value #COLUMN} column.
+     *
+     * @return true if the column is indexed
+     * @throws SQLException if the metadata could not be read
+     */
+    private boolean hasIndex() throws SQLException {
+        try (ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (indexes.next()) {
+                if (COLUMN.equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dev.mzcy.database.sql.profiler;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A statement recorded by the {@link QueryProfiler} because it exceeded the slow threshold.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class ProfiledQuery {
+
+    String table;
+    String sql;
+    int parameterCount;
+    long executeNanos;
+    long fetchNanos;
+    long mappingNanos;
+    long totalNanos;
+    int rows;
+    Instant timestamp;
+    String plan;
+
+    /**
+     * Constructs a ProfiledQuery instance.
+     *
+     * @param table the table the statement ran against
+     * @param trace the finished trace of the statement
+     * @param plan the execution plan, or null if none was requested
+     */
+    ProfiledQuery(String table, QueryTrace trace, String plan) {
+        this.table = table;
+        this.sql = trace.getSql();
+        this.parameterCount = trace.getParameters().size();
+        this.executeNanos = trace.getExecuteNanos();
+        this.fetchNanos = trace.getFetchNanos();
+        this.mappingNanos = trace.getMappingNanos();
+        this.totalNanos = trace.totalNanos();
+        this.rows = trace.getRows();
+        this.timestamp = Instant.now();
+        this.plan = plan;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%.3f ms [execute=%.3f fetch=%.3f mapping=%.3f] rows=%d params=%d table=%s at %s: %s",
+                millis(totalNanos), millis(executeNanos), millis(fetchNanos), millis(mappingNanos),
+                rows, parameterCount, table, timestamp, sql));
+        if (plan != null && !plan.isEmpty()) {
+            builder.append("\n  plan: ").append(plan.replace("\n", "\n        "));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts nanoseconds to fractional milliseconds.
+     *
+     * @param nanos the nanoseconds
+     * @return the milliseconds
+     */
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,241 @@
+package dev.mzcy.database.sql.profiler;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Slow-operation log and query profiler for the SQL databases. Statements slower than the
+ * threshold are logged with their SQL text, parameter count, execute/fetch/mapping split and row
+ * count, and kept in a bounded set of the slowest statements that can be dumped at runtime.
+ * <p>
+ * {@code EXPLAIN} runs on a background thread, on the connection the statement ran on, so the
+ * caller never waits for it and a read served by a replica is explained by that replica. A slow
+ * statement whose plan is not known yet is logged once the plan is.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class QueryProfiler {
+
+    /** Profiler that never records anything. Used when no profiler is configured. */
+    public static final QueryProfiler DISABLED = new QueryProfiler(Duration.ZERO, 0, false);
+
+    /** Maximum number of distinct statements whose execution plan is remembered. */
+    private static final int MAX_PLANS = 256;
+
+    /** Maximum number of slow statements waiting for their plan; further ones are recorded without. */
+    private static final int MAX_PENDING_EXPLAINS = 64;
+
+    private static final Logger LOGGER = Logger.getLogger(QueryProfiler.class.getName());
+
+    @Getter
+    long thresholdNanos;
+    @Getter
+    int capacity;
+    @Getter
+    boolean explain;
+    PriorityQueue<ProfiledQuery> slowest;
+    Map<String, String> plans;
+    ThreadPoolExecutor explainer;
+
+    /**
+     * Constructs a QueryProfiler instance.
+     *
+     * @param threshold statements taking at least this long are recorded
+     * @param capacity the number of slowest statements to keep
+     * @param explain whether to run {@code EXPLAIN} on slow statements, once per distinct SQL text
+     */
+    public QueryProfiler(Duration threshold, int capacity, boolean explain) {
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+        this.explain = explain;
+        this.slowest = new PriorityQueue<>(Math.max(1, capacity), Comparator.comparingLong(ProfiledQuery::getTotalNanos));
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_PLANS;
+            }
+        };
+        if (explain && capacity > 0) {
+            this.explainer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING_EXPLAINS), runnable -> {
+                Thread thread = new Thread(runnable, "query-profiler-explain");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.explainer.allowCoreThreadTimeOut(true);
+        } else {
+            this.explainer = null;
+        }
+    }
+
+    /**
+     * Checks if this profiler records anything.
+     *
+     * @return true if enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Starts tracing a statement.
+     *
+     * @param sql the SQL text
+     * @return a new trace, or {@link QueryTrace#DISABLED} if this profiler is disabled
+     */
+    public QueryTrace begin(String sql) {
+        return isEnabled() ? new QueryTrace(sql, true) : QueryTrace.DISABLED;
+    }
+
+    /**
+     * Finishes a trace, if the caller did not already, and records it if it exceeded the
+     * threshold. If the execution plan is requested but not known yet, the statement is recorded
+     * once {@code EXPLAIN} ran in the background.
+     *
+     * @param table the table the statement ran against
+     * @param trace the trace returned by {@link #begin(String)}
+     * @param explainPrefix the dialect-specific explain keyword, e.g. {@code "EXPLAIN "}
+     */
+    public void finish(String table, QueryTrace trace, String explainPrefix) {
+        if (!trace.isEnabled()) {
+            return;
+        }
+        trace.finish();
+        if (trace.totalNanos() < thresholdNanos) {
+            return;
+        }
+        Connection connection = trace.getConnection();
+        if (explainer == null || connection == null) {
+            record(new ProfiledQuery(table, trace, null));
+            return;
+        }
+        String plan;
+        synchronized (plans) {
+            plan = plans.get(trace.getSql());
+        }
+        if (plan != null) {
+            record(new ProfiledQuery(table, trace, plan));
+            return;
+        }
+        try {
+            explainer.execute(() -> record(new ProfiledQuery(table, trace, explain(trace, connection, explainPrefix))));
+        } catch (RejectedExecutionException e) {
+            record(new ProfiledQuery(table, trace, null));
+        }
+    }
+
+    /**
+     * Gets the slowest recorded statements.
+     *
+     * @return the statements, slowest first
+     */
+    public List<ProfiledQuery> getSlowest() {
+        List<ProfiledQuery> queries;
+        synchronized (slowest) {
+            queries = new ArrayList<>(slowest);
+        }
+        queries.sort(Comparator.comparingLong(ProfiledQuery::getTotalNanos).reversed());
+        return queries;
+    }
+
+    /**
+     * Renders the slowest recorded statements, slowest first.
+     *
+     * @return the rendered statements
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (ProfiledQuery query : getSlowest()) {
+            builder.append(query).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Removes all recorded statements and execution plans.
+     */
+    public void reset() {
+        synchronized (slowest) {
+            slowest.clear();
+        }
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+
+    /**
+     * Logs a slow statement and keeps it if it is among the slowest.
+     *
+     * @param query the statement
+     */
+    private void record(ProfiledQuery query) {
+        LOGGER.log(Level.WARNING, "Slow SQL: {0}", query);
+        synchronized (slowest) {
+            slowest.add(query);
+            if (slowest.size() > capacity) {
+                slowest.poll();
+            }
+        }
+    }
+
+    /**
+     * Gets the execution plan of a statement, running {@code EXPLAIN} if it is not known yet.
+     *
+     * @param trace the trace of the statement
+     * @param connection the connection to run on
+     * @param explainPrefix the dialect-specific explain keyword
+     * @return the execution plan, or null if it could not be determined
+     */
+    private String explain(QueryTrace trace, Connection connection, String explainPrefix) {
+        synchronized (plans) {
+            String plan = plans.get(trace.getSql());
+            if (plan != null) {
+                return plan;
+            }
+        }
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement(explainPrefix + trace.getSql())) {
+            List<Object> parameters = trace.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            ResultSet resultSet = statement.executeQuery();
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            while (resultSet.next()) {
+                if (!plan.isEmpty()) {
+                    plan.append('\n');
+                }
+                for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                    if (column > 1) {
+                        plan.append(", ");
+                    }
+                    plan.append(metaData.getColumnLabel(column)).append('=').append(resultSet.getString(column));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+        synchronized (plans) {
+            plans.put(trace.getSql(), plan.toString());
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,192 @@
+package dev.mzcy.database.sql.profiler;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the phases of a single SQL statement for the {@link QueryProfiler}. When profiling is
+ * disabled the databases receive {@link #DISABLED}, on which every method returns immediately.
+ * <p>
+ * A trace covers the statement only: it starts with {@link #started(Connection)} once the caller
+ * holds the statement, and for writes the write lock, and ends with {@link #finish()} right after
+ * the last row was read or the update count returned. Waiting for the lock and committing are
+ * reported as separate metrics.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class QueryTrace {
+
+    /** Shared trace used while profiling is disabled. */
+    public static final QueryTrace DISABLED = new QueryTrace(null, false);
+
+    String sql;
+    boolean enabled;
+    List<Object> parameters;
+    @NonFinal
+    Connection connection;
+    @NonFinal
+    long startedAt;
+    @NonFinal
+    long lastMark;
+    @NonFinal
+    long executeNanos;
+    @NonFinal
+    long fetchNanos;
+    @NonFinal
+    long mappingNanos;
+    @NonFinal
+    int rows;
+    @NonFinal
+    boolean finished;
+
+    /**
+     * Constructs a QueryTrace instance.
+     *
+     * @param sql the SQL text of the statement
+     * @param enabled whether this trace records anything
+     */
+    QueryTrace(String sql, boolean enabled) {
+        this.sql = sql;
+        this.enabled = enabled;
+        this.parameters = enabled ? new ArrayList<>() : List.of();
+        this.startedAt = enabled ? System.nanoTime() : 0L;
+        this.lastMark = startedAt;
+    }
+
+    /**
+     * Marks the start of the statement, once the caller holds it. Restarts the phases, so a read
+     * retried on another connection reports the attempt that returned.
+     *
+     * @param connection the connection the statement runs on, used to run {@code EXPLAIN} later on
+     */
+    public void started(Connection connection) {
+        if (enabled) {
+            this.connection = connection;
+            startedAt = System.nanoTime();
+            lastMark = startedAt;
+            executeNanos = 0L;
+            fetchNanos = 0L;
+            mappingNanos = 0L;
+            rows = 0;
+            finished = false;
+        }
+    }
+
+    /**
+     * Remembers a bound parameter, used to re-run the statement with {@code EXPLAIN}.
+     *
+     * @param value the parameter value
+     */
+    public void parameter(Object value) {
+        if (enabled) {
+            parameters.add(value);
+        }
+    }
+
+    /**
+     * Remembers a bound {@code long} parameter, boxing it only if this trace records anything.
+     *
+     * @param value the parameter value
+     */
+    public void parameter(long value) {
+        if (enabled) {
+            parameters.add(value);
+        }
+    }
+
+    /**
+     * Remembers a bound {@code int} parameter, boxing it only if this trace records anything.
+     *
+     * @param value the parameter value
+     */
+    public void parameter(int value) {
+        if (enabled) {
+            parameters.add(value);
+        }
+    }
+
+    /**
+     * Marks the end of the work done before execution, such as binding parameters.
+     */
+    public void mapped() {
+        if (enabled) {
+            mappingNanos += elapsed();
+        }
+    }
+
+    /**
+     * Marks the end of statement execution.
+     */
+    public void executed() {
+        if (enabled) {
+            executeNanos += elapsed();
+        }
+    }
+
+    /**
+     * Marks the end of fetching a row from the result set.
+     */
+    public void fetched() {
+        if (enabled) {
+            fetchNanos += elapsed();
+        }
+    }
+
+    /**
+     * Marks the end of mapping a fetched row to an entity.
+     */
+    public void rowMapped() {
+        if (enabled) {
+            mappingNanos += elapsed();
+            rows++;
+        }
+    }
+
+    /**
+     * Sets the number of rows affected by an update.
+     *
+     * @param rows the affected row count
+     */
+    public void affected(int rows) {
+        if (enabled) {
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Ends the trace. Time since the last mark, such as the final {@code ResultSet#next()}
+     * call that returned false, is attributed to fetching. Later calls do nothing.
+     */
+    public void finish() {
+        if (enabled && !finished) {
+            fetchNanos += elapsed();
+            finished = true;
+        }
+    }
+
+    /**
+     * Gets the total time since the trace was started.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long totalNanos() {
+        return lastMark - startedAt;
+    }
+
+    /**
+     * Gets the time since the previous mark and moves the mark.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    private long elapsed() {
+        long now = System.nanoTime();
+        long elapsed = now - lastMark;
+        lastMark = now;
+        return elapsed;
+    }
+}
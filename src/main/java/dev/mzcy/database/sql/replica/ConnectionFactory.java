@@ -0,0 +1,20 @@
+package dev.mzcy.database.sql.replica;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Opens a new connection to a replica, used to connect initially and to reconnect after failures.
+ */
+@FunctionalInterface
+public interface ConnectionFactory {
+
+    /**
+     * Opens a connection.
+     *
+     * @return the connection
+     * @throws SQLException if the connection could not be opened
+     */
+    Connection connect() throws SQLException;
+
+}
@@ -0,0 +1,59 @@
+package dev.mzcy.database.sql.replica;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Measures how far a replica lags behind its primary.
+ */
+@FunctionalInterface
+public interface LagProbe {
+
+    /**
+     * Probe for MySQL replicas. Reads {@code Seconds_Behind_Source} from {@code SHOW REPLICA STATUS},
+     * falling back to {@code SHOW SLAVE STATUS} on servers older than 8.0.22. A server that is not
+     * a replica reports no lag; a replica whose replication is stopped reports unlimited lag.
+     * <p>
+     * The replica user needs the {@code REPLICATION CLIENT} privilege (or {@code SUPER}) to run
+     * these statements. Without it every probe fails, the replica stays out of rotation and all
+     * reads go to the primary; the failure is logged by {@link ReplicaEndpoint}.
+     */
+    LagProbe MYSQL = connection -> {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SHOW REPLICA STATUS")) {
+                return readLag(resultSet, "Seconds_Behind_Source");
+            } catch (SQLException e) {
+                try (ResultSet resultSet = statement.executeQuery("SHOW SLAVE STATUS")) {
+                    return readLag(resultSet, "Seconds_Behind_Master");
+                }
+            }
+        }
+    };
+
+    /**
+     * Measures the replication lag of a replica.
+     *
+     * @param connection the connection to the replica
+     * @return the lag in milliseconds
+     * @throws SQLException if the lag could not be determined
+     */
+    long lagMillis(Connection connection) throws SQLException;
+
+    /**
+     * Reads the lag column of a replica status result.
+     *
+     * @param resultSet the replica status result
+     * @param column the lag column name
+     * @return the lag in milliseconds
+     * @throws SQLException if the column could not be read
+     */
+    private static long readLag(ResultSet resultSet, String column) throws SQLException {
+        if (!resultSet.next()) {
+            return 0L;
+        }
+        long seconds = resultSet.getLong(column);
+        return resultSet.wasNull() ? Long.MAX_VALUE : seconds * 1000L;
+    }
+}
@@ -0,0 +1,138 @@
+package dev.mzcy.database.sql.replica;
+
+import dev.mzcy.database.sql.binding.StatementCache;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A read replica together with its connection, statement cache and health state. Taking the
+ * replica out of rotation and putting it back are logged once per change of state.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class ReplicaEndpoint {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicaEndpoint.class.getName());
+
+    @Getter
+    String name;
+    ConnectionFactory connectionFactory;
+    @NonFinal
+    @Getter
+    volatile Connection connection;
+    @NonFinal
+    @Getter
+    volatile StatementCache statements;
+    @NonFinal
+    @Getter
+    volatile boolean healthy;
+    @NonFinal
+    @Getter
+    volatile long lagMillis;
+    @NonFinal
+    @Getter
+    volatile long latencyNanos;
+    @NonFinal
+    @Getter
+    volatile String problem;
+
+    /**
+     * Constructs a ReplicaEndpoint instance. The connection is opened by the first health check.
+     *
+     * @param name the name used in logs, e.g. {@code host:port}
+     * @param connectionFactory opens connections to the replica
+     */
+    public ReplicaEndpoint(String name, ConnectionFactory connectionFactory) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Records the latency of a read, smoothed as an exponentially weighted moving average.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    void recordLatency(long nanos) {
+        long current = latencyNanos;
+        latencyNanos = current == 0 ? nanos : current + (nanos - current) / 8;
+    }
+
+    /**
+     * Checks the replica, reconnecting if needed, and updates its health. A failed connection
+     * or lag probe, e.g. for lack of a privilege the probe needs, ejects the replica.
+     *
+     * @param probe the lag probe
+     * @param maxLagMillis the lag above which the replica is ejected
+     */
+    synchronized void check(LagProbe probe, long maxLagMillis) {
+        try {
+            if (connection == null || connection.isClosed()) {
+                close();
+                connection = connectionFactory.connect();
+                statements = new StatementCache(connection);
+            }
+            lagMillis = probe.lagMillis(connection);
+            healthy = lagMillis <= maxLagMillis;
+            report(healthy ? null : "replication lag above " + maxLagMillis + "ms", null);
+        } catch (SQLException e) {
+            healthy = false;
+            report("health check failed: " + e.getMessage(), e);
+            close();
+        }
+    }
+
+    /**
+     * Logs the replica leaving or rejoining the rotation, once per change of the problem.
+     *
+     * @param problem why the replica is out of rotation, or null if it is healthy
+     * @param cause the exception behind the problem, or null
+     */
+    private void report(String problem, Throwable cause) {
+        String previous = this.problem;
+        if (Objects.equals(previous, problem)) {
+            return;
+        }
+        this.problem = problem;
+        if (problem == null) {
+            LOGGER.log(Level.INFO, "Replica {0} is back in rotation", name);
+        } else {
+            LOGGER.log(Level.WARNING, "Replica " + name + " taken out of rotation: " + problem, cause);
+        }
+    }
+
+    /**
+     * Takes the replica out of rotation until the next successful health check.
+     */
+    void eject() {
+        healthy = false;
+    }
+
+    /**
+     * Closes the connection and its cached statements.
+     */
+    synchronized void close() {
+        if (statements != null) {
+            statements.close();
+            statements = null;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            connection = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + (healthy ? " healthy" : " ejected") + " lag=" + lagMillis + "ms latency=" + latencyNanos / 1000 + "us";
+    }
+}
@@ -0,0 +1,216 @@
+package dev.mzcy.database.sql.replica;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Routes reads to read replicas and writes to the primary. Replicas whose replication lag
+ * crosses the threshold, or whose connection fails, are ejected until a later health check
+ * finds them healthy again. After a write, reads of the same thread stick to the primary for
+ * a while, so a caller always reads its own writes. The window is at least the maximum lag, since
+ * a replica still in rotation may be that far behind.
+ * <p>
+ * Stickiness is tracked per thread: a read handed to another thread, such as an executor, does
+ * not stick to the primary after a write of the calling thread. Such callers should read through
+ * {@link #onPrimary(Supplier)} on the reading thread when they must see their own writes.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class ReplicaRouter implements AutoCloseable {
+
+    /** Router without replicas, sending everything to the primary, so it needs no stickiness or lag threshold. */
+    public static final ReplicaRouter PRIMARY_ONLY = new ReplicaRouter(List.of(), ReplicaSelection.ROUND_ROBIN, Duration.ZERO, Duration.ZERO, LagProbe.MYSQL);
+
+    @Getter
+    List<ReplicaEndpoint> replicas;
+    @Getter
+    ReplicaSelection selection;
+    long stickinessNanos;
+    long maxLagMillis;
+    LagProbe probe;
+    AtomicInteger next = new AtomicInteger();
+    ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[1]);
+    ThreadLocal<int[]> primaryReads = ThreadLocal.withInitial(() -> new int[1]);
+    ScheduledExecutorService healthChecker;
+
+    /**
+     * Constructs a ReplicaRouter instance and runs a first health check on all replicas.
+     *
+     * @param replicas the replicas
+     * @param selection how to pick a replica for a read
+     * @param stickiness how long reads of a thread stay on the primary after it wrote, at least {@code maxLag}
+     * @param maxLag the replication lag above which a replica is ejected
+     * @param probe measures replication lag
+     * @throws IllegalArgumentException if the stickiness is shorter than the maximum lag
+     */
+    public ReplicaRouter(List<ReplicaEndpoint> replicas, ReplicaSelection selection, Duration stickiness, Duration maxLag, LagProbe probe) {
+        if (stickiness.compareTo(maxLag) < 0) {
+            throw new IllegalArgumentException("stickiness must be at least maxLag, or a thread may not read its own writes");
+        }
+        this.replicas = List.copyOf(replicas);
+        this.selection = selection;
+        this.stickinessNanos = stickiness.toNanos();
+        this.maxLagMillis = maxLag.toMillis();
+        this.probe = probe;
+        this.healthChecker = replicas.isEmpty() ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkReplicas();
+    }
+
+    /**
+     * Runs a health check on all replicas at a fixed interval in the background.
+     *
+     * @param interval the interval between checks
+     * @return this router, for chaining
+     */
+    public ReplicaRouter startHealthChecks(Duration interval) {
+        if (healthChecker != null) {
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Checks every replica now, reconnecting broken ones and updating their lag.
+     */
+    public void checkHealth() {
+        checkReplicas();
+    }
+
+    /**
+     * Checks if any replicas are configured. Without replicas every read goes to the primary.
+     *
+     * @return true if there are replicas, false otherwise
+     */
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Picks the replica that should serve a read of the current thread.
+     *
+     * @return the replica, or null if the read should go to the primary
+     */
+    public ReplicaEndpoint route() {
+        if (replicas.isEmpty() || primaryReads.get()[0] > 0) {
+            return null;
+        }
+        long wroteAt = lastWrite.get()[0];
+        if (wroteAt != 0L && System.nanoTime() - wroteAt < stickinessNanos) {
+            return null;
+        }
+        return selection == ReplicaSelection.LEAST_LATENCY ? leastLatency() : roundRobin();
+    }
+
+    /**
+     * Marks that the current thread wrote to the primary, starting its stickiness window.
+     */
+    public void wrote() {
+        if (!replicas.isEmpty()) {
+            lastWrite.get()[0] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Runs reads of the current thread on the primary, whether or not it wrote recently.
+     *
+     * @param read the reads to run
+     * @param <T> the type of the result
+     * @return the result of the reads
+     */
+    public <T> T onPrimary(Supplier<T> read) {
+        if (replicas.isEmpty()) {
+            return read.get();
+        }
+        int[] depth = primaryReads.get();
+        depth[0]++;
+        try {
+            return read.get();
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    /**
+     * Records the latency of a read served by a replica.
+     *
+     * @param replica the replica
+     * @param nanos the latency in nanoseconds
+     */
+    public void recordLatency(ReplicaEndpoint replica, long nanos) {
+        replica.recordLatency(nanos);
+    }
+
+    /**
+     * Takes a replica out of rotation after a failed read.
+     *
+     * @param replica the replica
+     */
+    public void eject(ReplicaEndpoint replica) {
+        replica.eject();
+    }
+
+    /**
+     * Stops the health checks and closes all replica connections.
+     */
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (ReplicaEndpoint replica : replicas) {
+            replica.close();
+        }
+    }
+
+    /**
+     * Checks every replica, reconnecting broken ones and updating their lag.
+     */
+    private void checkReplicas() {
+        for (ReplicaEndpoint replica : replicas) {
+            replica.check(probe, maxLagMillis);
+        }
+    }
+
+    /**
+     * Picks the next healthy replica in order.
+     *
+     * @return the replica, or null if none is healthy
+     */
+    private ReplicaEndpoint roundRobin() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            ReplicaEndpoint replica = replicas.get((start + i) % size);
+            if (replica.isHealthy()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the healthy replica with the lowest smoothed latency.
+     *
+     * @return the replica, or null if none is healthy
+     */
+    private ReplicaEndpoint leastLatency() {
+        ReplicaEndpoint best = null;
+        for (ReplicaEndpoint replica : replicas) {
+            if (replica.isHealthy() && (best == null || replica.getLatencyNanos() < best.getLatencyNanos())) {
+                best = replica;
+            }
+        }
+        return best;
+    }
+}
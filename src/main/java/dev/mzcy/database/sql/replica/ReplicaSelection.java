@@ -0,0 +1,14 @@
+package dev.mzcy.database.sql.replica;
+
+/**
+ * Decides which healthy replica serves the next read.
+ */
+public enum ReplicaSelection {
+
+    /** Cycles through the healthy replicas in order. */
+    ROUND_ROBIN,
+
+    /** Picks the healthy replica with the lowest recent read latency. */
+    LEAST_LATENCY
+
+}
@@ -0,0 +1,119 @@
+package dev.mzcy.database.warmup;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the most recently accessed keys, up to a capacity, so the next start can warm up
+ * with them. The keys are read from a file on construction and written back by {@link #close()},
+ * one key per line, most recent first.
+ */
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class RecentKeys implements AutoCloseable {
+
+    @Getter
+    Path file;
+    @Getter
+    int capacity;
+    LinkedHashMap<String, Boolean> keys;
+
+    /**
+     * Constructs a RecentKeys instance and loads the keys persisted by the previous run, if any.
+     *
+     * @param file the file to persist the keys in
+     * @param capacity the maximum number of keys to remember
+     */
+    public RecentKeys(Path file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+        this.keys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+        load();
+    }
+
+    /**
+     * Records an access to a key.
+     *
+     * @param key the key
+     */
+    public synchronized void record(String key) {
+        keys.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * Forgets a key, e.g. after its entity was deleted.
+     *
+     * @param key the key
+     */
+    public synchronized void forget(String key) {
+        keys.remove(key);
+    }
+
+    /**
+     * Gets the most recently accessed keys.
+     *
+     * @param limit the maximum number of keys
+     * @return the keys, most recent first
+     */
+    public synchronized List<String> top(int limit) {
+        List<String> recent = new ArrayList<>(keys.keySet());
+        Collections.reverse(recent);
+        return recent.size() <= limit ? recent : new ArrayList<>(recent.subList(0, limit));
+    }
+
+    /**
+     * Writes the keys to the file, replacing it atomically.
+     */
+    public void save() {
+        List<String> recent = top(capacity);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temporary, recent, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the keys to the file. Call this on shutdown.
+     */
+    @Override
+    public void close() {
+        save();
+    }
+
+    /**
+     * Reads the keys persisted by the previous run, keeping their order.
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            List<String> persisted = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (int i = persisted.size() - 1; i >= 0; i--) {
+                if (!persisted.get(i).isEmpty()) {
+                    keys.put(persisted.get(i), Boolean.TRUE);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package dev.mzcy.database.warmup;
+
+import dev.mzcy.database.Database;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms a database up before it takes traffic: primes its statements and mappers, then reads the
+ * given keys in parallel batches, one batch read per task. Reading through a {@link dev.mzcy.database.cache.TieredCacheDatabase}
+ * fills its cache tiers; reading a backend directly warms the backend's own caches and the JIT.
+ * <p>
+ * The SQL backends read over a single connection per server, so their batches queue up on it;
+ * parallelism pays off with read replicas and for the cache fills of a tiered cache. Batches
+ * whose read throws are counted as failed.
+ */
+public final class Warmup {
+
+    /** Default number of threads loading entities. */
+    public static final int DEFAULT_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Default number of keys loaded per task. */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private Warmup() {
+    }
+
+    /**
+     * Warms a database up.
+     *
+     * @param database the database
+     * @param keys the keys of the entities to load
+     * @param parallelism the number of threads loading entities
+     * @param batchSize the number of keys loaded per task
+     * @param <E> the type of the entity
+     * @return the report
+     */
+    public static <E> WarmupReport run(Database<E> database, Collection<String> keys, int parallelism, int batchSize) {
+        long start = System.nanoTime();
+        database.prime();
+        long primed = System.nanoTime();
+
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        if (!batches.isEmpty()) {
+            AtomicInteger threads = new AtomicInteger();
+            ExecutorService loader = Executors.newFixedThreadPool(Math.min(parallelism, batches.size()), runnable -> {
+                Thread thread = new Thread(runnable, "warmup-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<>(batches.size());
+                for (List<String> keysOfBatch : batches) {
+                    futures.add(loader.submit(() -> load(database, keysOfBatch, loaded, failed)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } finally {
+                loader.shutdownNow();
+            }
+        }
+        long end = System.nanoTime();
+        return new WarmupReport(keys.size(), loaded.get(), failed.get(), Duration.ofNanos(primed - start), Duration.ofNanos(end - primed));
+    }
+
+    /**
+     * Warms a database up with the {@link #DEFAULT_PARALLELISM} and {@link #DEFAULT_BATCH_SIZE}.
+     *
+     * @param database the database
+     * @param keys the keys of the entities to load
+     * @param <E> the type of the entity
+     * @return the report
+     */
+    public static <E> WarmupReport run(Database<E> database, Collection<String> keys) {
+        return run(database, keys, DEFAULT_PARALLELISM, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Loads one batch of keys with a single {@link Database#getEntities(java.util.Collection)} call.
+     *
+     * @param database the database
+     * @param keys the keys of the batch
+     * @param loaded counts the entities found
+     * @param failed counts the keys whose batch threw
+     * @param <E> the type of the entity
+     */
+    private static <E> void load(Database<E> database, List<String> keys, AtomicInteger loaded, AtomicInteger failed) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        try {
+            loaded.addAndGet(database.getEntities(keys).size());
+        } catch (RuntimeException e) {
+            failed.addAndGet(keys.size());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dev.mzcy.database.warmup;
+
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a warm-up: how many entities were loaded and how long each phase took.
+ */
+@Getter
+@FieldDefaults(level = lombok.AccessLevel.PRIVATE, makeFinal = true)
+public class WarmupReport {
+
+    /** The number of keys that were requested. */
+    int requested;
+
+    /** The number of entities that were found and loaded. */
+    int loaded;
+
+    /** The number of keys whose load failed with an exception. */
+    int failed;
+
+    /** The time spent preparing statements and building mappers. */
+    Duration primeTime;
+
+    /** The time spent loading entities. */
+    Duration loadTime;
+
+    /**
+     * Constructs a WarmupReport instance.
+     *
+     * @param requested the number of requested keys
+     * @param loaded the number of loaded entities
+     * @param failed the number of failed loads
+     * @param primeTime the time spent priming
+     * @param loadTime the time spent loading
+     */
+    public WarmupReport(int requested, int loaded, int failed, Duration primeTime, Duration loadTime) {
+        this.requested = requested;
+        this.loaded = loaded;
+        this.failed = failed;
+        this.primeTime = primeTime;
+        this.loadTime = loadTime;
+    }
+
+    /**
+     * Gets the total time the warm-up took.
+     *
+     * @return the sum of the prime and load time
+     */
+    public Duration getTotalTime() {
+        return primeTime.plus(loadTime);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("warm-up loaded %d/%d entities (%d failed) in %d ms: priming %d ms, loading %d ms",
+                loaded, requested, failed, getTotalTime().toMillis(), primeTime.toMillis(), loadTime.toMillis());
+    }
+}
@@ -0,0 +1,144 @@
+package dev.mzcy.database;
+
+import dev.mzcy.database.change.ChangeEvent;
+import dev.mzcy.database.change.ChangeSubscription;
+import dev.mzcy.database.change.ChangeType;
+import dev.mzcy.database.nosql.JSONDatabase;
+import dev.mzcy.database.sql.SQLiteDatabase;
+import dev.mzcy.database.sql.binding.StatementCache;
+import dev.mzcy.database.sql.change.SQLChangelog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests change feeds: the SQLite changelog shared by two instances on the same file, and the
+ * in-process feed of the JSON database.
+ */
+class ChangelogTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+
+    @BeforeEach
+    void createDatabases() {
+        databases = new TestDatabases(directory);
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        databases.close();
+    }
+
+    @Test
+    void sqliteSubscribersSeeChangesOfOtherInstancesInOrder() throws InterruptedException {
+        SQLiteDatabase<Person> reader = databases.sqlite("person");
+        SQLiteDatabase<Person> writer = databases.sqlite("person");
+        writer.enableChangelog();
+        BlockingQueue<ChangeEvent<Person>> events = new LinkedBlockingQueue<>();
+        ChangeSubscription subscription = reader.subscribe(events::add);
+
+        writer.save(new Person("a", "first"));
+        writer.save(new Person("b", "second"));
+        writer.deleteEntity("a");
+
+        assertEvent(events, ChangeType.SAVE, "a");
+        assertEvent(events, ChangeType.SAVE, "b");
+        ChangeEvent<Person> delete = assertEvent(events, ChangeType.DELETE, "a");
+        assertNull(delete.getEntity());
+        subscription.close();
+    }
+
+    @Test
+    void sqliteExpiredRowsAreDeliveredAsDeletes() throws InterruptedException {
+        SQLiteDatabase<Person> database = databases.sqlite("person");
+        BlockingQueue<ChangeEvent<Person>> events = new LinkedBlockingQueue<>();
+        database.subscribe(events::add);
+
+        database.save(new Person("session", "expiring"), Duration.ofMillis(50));
+
+        assertEvent(events, ChangeType.SAVE, "session");
+        assertEvent(events, ChangeType.DELETE, "session");
+    }
+
+    @Test
+    void sqliteSweepsLogOnlyTheRowsTheyDeleted() throws InterruptedException {
+        SQLiteDatabase<Person> database = databases.sqlite("person");
+        BlockingQueue<ChangeEvent<Person>> events = new LinkedBlockingQueue<>();
+        database.subscribe(events::add);
+
+        database.saveAll(List.of(new Person("a", "first"), new Person("b", "second"), new Person("c", "third")), Duration.ofMillis(50));
+        database.save(new Person("b", "kept"));
+
+        Set<String> saved = new HashSet<>();
+        Set<String> deleted = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            ChangeEvent<Person> event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(event);
+            (event.getType() == ChangeType.SAVE ? saved : deleted).add(event.getKey());
+        }
+        assertEquals(Set.of("a", "b", "c"), saved);
+        assertEquals(Set.of("a", "c"), deleted);
+        assertNull(events.poll(SQLChangelog.DEFAULT_POLL_INTERVAL.toMillis() * 3, TimeUnit.MILLISECONDS));
+        assertEquals("kept", database.getEntity("b").name);
+    }
+
+    @Test
+    void uncommittedChangesOfTheSameConnectionAreNotPolled() throws Exception {
+        SQLiteDatabase<Person> database = databases.sqlite("person");
+        BlockingQueue<ChangeEvent<Person>> events = new LinkedBlockingQueue<>();
+        database.subscribe(events::add);
+
+        StatementCache statements = database.getStatements();
+        statements.beginWrite(true);
+        try {
+            database.getChangelog().append("ghost", ChangeType.SAVE, database.getMetrics());
+            Thread.sleep(SQLChangelog.DEFAULT_POLL_INTERVAL.toMillis() * 2);
+        } finally {
+            statements.endWrite();
+        }
+        database.save(new Person("a", "first"));
+
+        assertEvent(events, ChangeType.SAVE, "a");
+    }
+
+    @Test
+    void jsonSubscribersReceiveEntities() throws InterruptedException {
+        JSONDatabase<Person> database = databases.json("person");
+        BlockingQueue<ChangeEvent<Person>> events = new LinkedBlockingQueue<>();
+        ChangeSubscription subscription = database.subscribe(events::add);
+
+        database.save(new Person("a", "first"));
+        database.deleteEntity("a");
+
+        assertEquals("first", assertEvent(events, ChangeType.SAVE, "a").getEntity().name);
+        assertEvent(events, ChangeType.DELETE, "a");
+
+        subscription.close();
+        database.save(new Person("b", "second"));
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private static ChangeEvent<Person> assertEvent(BlockingQueue<ChangeEvent<Person>> events, ChangeType type, String key) throws InterruptedException {
+        ChangeEvent<Person> event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(event, "no " + type + " event for " + key);
+        assertEquals(type, event.getType());
+        assertEquals(key, event.getKey());
+        return event;
+    }
+}
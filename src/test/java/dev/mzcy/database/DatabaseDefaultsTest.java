@@ -0,0 +1,52 @@
+package dev.mzcy.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the defaults of {@link Database} on an implementation of the required methods only.
+ */
+class DatabaseDefaultsTest {
+
+    private final Map<String, Person> entities = new HashMap<>();
+    private final Database<Person> database = new Database<>() {
+        @Override
+        public void save(Person entity) {
+            entities.put(entity.id, entity);
+        }
+
+        @Override
+        public Person getEntity(String key) {
+            return entities.get(key);
+        }
+    };
+
+    @Test
+    void batchOperationsFallBackToSingleOnes() {
+        database.saveAll(List.of(new Person("a", "first"), new Person("b", "second")));
+
+        Map<String, Person> found = database.getEntities(List.of("b", "missing", "a"));
+
+        assertEquals(List.of("b", "a"), List.copyOf(found.keySet()));
+        assertEquals("second", found.get("b").name);
+    }
+
+    @Test
+    void optionalOperationsAreUnsupported() {
+        Person person = new Person("a", "first");
+
+        assertThrows(UnsupportedOperationException.class, () -> database.save(person, Duration.ofMinutes(1)));
+        assertThrows(UnsupportedOperationException.class, () -> database.deleteEntity("a"));
+        assertThrows(UnsupportedOperationException.class, () -> database.page(null, 10));
+        assertThrows(UnsupportedOperationException.class, () -> database.subscribe(event -> {
+        }));
+        assertDoesNotThrow(database::prime);
+        assertDoesNotThrow(() -> database.setMetricsRecorder(null));
+    }
+}
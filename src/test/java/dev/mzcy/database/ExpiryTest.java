@@ -0,0 +1,77 @@
+package dev.mzcy.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests entities saved with a time to live against the file based databases.
+ */
+class ExpiryTest {
+
+    private static final Duration TTL = Duration.ofMillis(100);
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+
+    @BeforeEach
+    void createDatabases() {
+        databases = new TestDatabases(directory);
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        databases.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void expiredEntitiesAreInvisible(String backend) throws InterruptedException {
+        Database<Person> database = open(backend);
+        database.save(new Person("session", "expiring"), TTL);
+        database.save(new Person("user", "permanent"));
+
+        assertNotNull(database.getEntity("session"));
+        Thread.sleep(TTL.toMillis() * 2);
+
+        assertNull(database.getEntity("session"));
+        assertEquals(List.of("user"), List.copyOf(database.getEntities(List.of("session", "user")).keySet()));
+        assertEquals(1, database.page(null, 10).getEntities().size());
+        assertNotNull(database.getEntity("user"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void plainSaveClearsTheTimeToLive(String backend) throws InterruptedException {
+        Database<Person> database = open(backend);
+        database.save(new Person("session", "expiring"), TTL);
+        database.save(new Person("session", "kept"));
+        Thread.sleep(TTL.toMillis() * 2);
+
+        assertEquals("kept", database.getEntity("session").name);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void timeToLiveSurvivesReopening(String backend) throws InterruptedException {
+        open(backend).save(new Person("session", "expiring"), TTL);
+        Database<Person> reopened = open(backend);
+
+        assertNotNull(reopened.getEntity("session"));
+        Thread.sleep(TTL.toMillis() * 2);
+        assertNull(reopened.getEntity("session"));
+    }
+
+    private Database<Person> open(String backend) {
+        return databases.open(backend, "person");
+    }
+}
@@ -0,0 +1,96 @@
+package dev.mzcy.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests keyset paging against the file based databases: SQLite on a temporary file and JSON.
+ */
+class PageTest {
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+
+    @BeforeEach
+    void createDatabases() {
+        databases = new TestDatabases(directory);
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        databases.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void pagesFollowKeyOrder(String backend) {
+        Database<Person> database = open(backend);
+        for (int i = 0; i < 7; i++) {
+            database.save(new Person("k" + i, "n" + i));
+        }
+
+        Page<Person> first = database.page(null, 3);
+        assertEquals(List.of("k0", "k1", "k2"), ids(first));
+        assertTrue(first.hasNext());
+        assertEquals("k2", first.getNextKey());
+
+        Page<Person> second = database.page(first.getNextKey(), 3);
+        assertEquals(List.of("k3", "k4", "k5"), ids(second));
+        assertEquals("k5", second.getNextKey());
+
+        Page<Person> last = database.page(second.getNextKey(), 3);
+        assertEquals(List.of("k6"), ids(last));
+        assertFalse(last.hasNext());
+        assertNull(last.getNextKey());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void afterKeyNeedNotExist(String backend) {
+        Database<Person> database = open(backend);
+        database.save(new Person("a", "first"));
+        database.save(new Person("c", "second"));
+
+        assertEquals(List.of("c"), ids(database.page("b", 10)));
+        assertEquals(List.of(), ids(database.page("c", 10)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void emptyTableHasEmptyPage(String backend) {
+        Page<Person> page = open(backend).page(null, 10);
+
+        assertTrue(page.getEntities().isEmpty());
+        assertFalse(page.hasNext());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void nonPositiveLimitHasEmptyPage(String backend) {
+        Database<Person> database = open(backend);
+        database.save(new Person("a", "first"));
+
+        for (int limit : new int[]{0, -1}) {
+            Page<Person> page = database.page(null, limit);
+            assertTrue(page.getEntities().isEmpty());
+            assertFalse(page.hasNext());
+        }
+    }
+
+    private Database<Person> open(String backend) {
+        return databases.open(backend, "person");
+    }
+
+    private static List<String> ids(Page<Person> page) {
+        return page.getEntities().stream().map(person -> person.id).toList();
+    }
+}
@@ -0,0 +1,30 @@
+package dev.mzcy.database;
+
+import dev.mzcy.database.nosql.annotation.PrimaryKey;
+import dev.mzcy.database.sql.annotation.TableField;
+
+/**
+ * Entity stored by the database tests, mapped to a table with an id and a name column.
+ */
+public class Person {
+
+    @PrimaryKey
+    @TableField(name = "id", primaryKey = true)
+    public String id;
+
+    @TableField(name = "name")
+    public String name;
+
+    public Person() {
+    }
+
+    public Person(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return id + ":" + name;
+    }
+}
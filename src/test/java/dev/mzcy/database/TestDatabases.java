@@ -0,0 +1,63 @@
+package dev.mzcy.database;
+
+import dev.mzcy.database.credentials.DatabaseCredentials;
+import dev.mzcy.database.nosql.JSONDatabase;
+import dev.mzcy.database.sql.SQLiteDatabase;
+import dev.mzcy.database.sql.table.TableBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens {@link Person} databases backed by files in a test directory, and closes them after the
+ * test so no background thread outlives it.
+ */
+public class TestDatabases {
+
+    private final Path directory;
+    private final List<Runnable> closers = new ArrayList<>();
+
+    public TestDatabases(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens a database, creating its file on first use.
+     *
+     * @param backend "sqlite" or "json"
+     * @param name the file name without extension, also the SQLite table name
+     * @return the database
+     */
+    public Database<Person> open(String backend, String name) {
+        return backend.equals("json") ? json(name) : sqlite(name);
+    }
+
+    public JSONDatabase<Person> json(String name) {
+        JSONDatabase<Person> database = new JSONDatabase<>(directory.resolve(name + ".json").toString(), Person.class);
+        closers.add(database::close);
+        return database;
+    }
+
+    public SQLiteDatabase<Person> sqlite(String name) {
+        Path file = directory.resolve(name + ".db");
+        boolean created = Files.notExists(file);
+        SQLiteDatabase<Person> database = new SQLiteDatabase<>(DatabaseCredentials.createSQLiteDatabase(file.toString()), name, Person.class);
+        closers.add(database::close);
+        if (created) {
+            database.createTable(new TableBuilder(name).addColumn("id VARCHAR(32) PRIMARY KEY").addColumn("name TEXT"));
+        }
+        return database;
+    }
+
+    /**
+     * Closes all opened databases, most recently opened first.
+     */
+    public void close() {
+        for (int i = closers.size() - 1; i >= 0; i--) {
+            closers.get(i).run();
+        }
+        closers.clear();
+    }
+}
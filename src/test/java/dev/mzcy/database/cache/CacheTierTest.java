@@ -0,0 +1,138 @@
+package dev.mzcy.database.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the bounded index of a single cache tier: eviction order, expiry and version checks.
+ */
+class CacheTierTest {
+
+    @Test
+    void lruEvictsTheLeastRecentlyUsedEntry() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(2, EvictionPolicy.LRU));
+        tier.put("a", "1", 0, Long.MAX_VALUE);
+        tier.put("b", "2", 0, Long.MAX_VALUE);
+        tier.get("a");
+
+        assertEquals(List.of("b"), tier.put("c", "3", 0, Long.MAX_VALUE));
+        assertNotNull(tier.get("a"));
+        assertEquals(2, tier.size());
+    }
+
+    @Test
+    void fifoEvictsTheOldestEntryEvenIfUsed() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(2, EvictionPolicy.FIFO));
+        tier.put("a", "1", 0, Long.MAX_VALUE);
+        tier.put("b", "2", 0, Long.MAX_VALUE);
+        tier.get("a");
+
+        assertEquals(List.of("a"), tier.put("c", "3", 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void entriesExpireAfterTheShorterOfPolicyAndTimeToLive() throws InterruptedException {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU, Duration.ofMillis(50)));
+        tier.put("policy", "1", 0, Long.MAX_VALUE);
+        tier.put("ttl", "2", 0, Duration.ofMillis(1).toNanos());
+        tier.restore("restored", "3", 0);
+        Thread.sleep(10);
+
+        assertFalse(tier.isExpired(tier.get("policy")));
+        assertTrue(tier.isExpired(tier.get("ttl")));
+        Thread.sleep(60);
+        assertTrue(tier.isExpired(tier.get("policy")));
+        assertFalse(tier.isExpired(tier.get("restored")));
+    }
+
+    @Test
+    void olderVersionsAreRejected() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        tier.put("a", "new", 2, Long.MAX_VALUE);
+
+        assertNull(tier.putIfNewer("a", "old", 1, Long.MAX_VALUE, false, System.nanoTime()));
+        assertEquals("new", tier.get("a").value());
+        assertNotNull(tier.putIfNewer("a", "newer", 3, Long.MAX_VALUE, false, System.nanoTime()));
+        assertEquals("newer", tier.get("a").value());
+    }
+
+    @Test
+    void fillsDoNotReplaceALiveEntryOfTheSameVersion() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        tier.put("a", "written", 0, Long.MAX_VALUE);
+
+        assertNull(tier.putIfNewer("a", "read", 0, Long.MAX_VALUE, true, System.nanoTime()));
+        assertNotNull(tier.putIfNewer("a", "written again", 0, Long.MAX_VALUE, false, System.nanoTime()));
+        assertEquals("written again", tier.get("a").value());
+    }
+
+    @Test
+    void changesWithoutVersionAlwaysRemove() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        tier.put("a", "1", 5, Long.MAX_VALUE);
+
+        assertTrue(tier.invalidate("a", Long.MAX_VALUE, System.nanoTime()));
+        assertNull(tier.get("a"));
+    }
+
+    @Test
+    void changesKeepEntriesOfTheChangedVersionOrLater() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        tier.put("a", "1", 5, Long.MAX_VALUE);
+
+        assertFalse(tier.invalidate("a", 5, System.nanoTime()));
+        assertTrue(tier.invalidate("a", 6, System.nanoTime()));
+        assertNull(tier.get("a"));
+    }
+
+    @Test
+    void valuesReadBeforeAChangeAreRejected() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        long readStarted = System.nanoTime();
+        tier.invalidate("a", Long.MAX_VALUE, System.nanoTime());
+
+        assertNull(tier.putIfNewer("a", "stale", 0, Long.MAX_VALUE, true, readStarted));
+        assertNull(tier.get("a"));
+        assertNotNull(tier.putIfNewer("b", "other key", 0, Long.MAX_VALUE, true, readStarted));
+        assertNotNull(tier.putIfNewer("a", "fresh", 0, Long.MAX_VALUE, true, System.nanoTime()));
+    }
+
+    @Test
+    void valuesOfTheChangedVersionAreAccepted() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        long writeStarted = System.nanoTime();
+        tier.invalidate("a", 3, System.nanoTime());
+
+        assertNull(tier.putIfNewer("a", "older", 2, Long.MAX_VALUE, false, writeStarted));
+        assertNotNull(tier.putIfNewer("a", "written", 3, Long.MAX_VALUE, false, writeStarted));
+    }
+
+    @Test
+    void forgottenChangesStillRejectOlderReads() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        long readStarted = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            tier.invalidate("k" + i, Long.MAX_VALUE, System.nanoTime());
+        }
+
+        assertNull(tier.putIfNewer("k0", "stale", 0, Long.MAX_VALUE, true, readStarted));
+        assertNotNull(tier.putIfNewer("k0", "fresh", 0, Long.MAX_VALUE, true, System.nanoTime()));
+    }
+
+    @Test
+    void overflowRemovesAllEntriesAndRejectsOlderReads() {
+        CacheTier<String> tier = new CacheTier<>(new CachePolicy(10, EvictionPolicy.LRU));
+        tier.put("a", "1", 5, Long.MAX_VALUE);
+        tier.put("b", "2", 5, Long.MAX_VALUE);
+        long readStarted = System.nanoTime();
+
+        assertEquals(List.of("a", "b"), tier.invalidateAll(System.nanoTime()));
+        assertEquals(0, tier.size());
+        assertNull(tier.putIfNewer("c", "stale", 9, Long.MAX_VALUE, true, readStarted));
+        assertNotNull(tier.putIfNewer("c", "fresh", 9, Long.MAX_VALUE, true, System.nanoTime()));
+    }
+}
@@ -0,0 +1,146 @@
+package dev.mzcy.database.cache;
+
+import dev.mzcy.database.Person;
+import dev.mzcy.database.TestDatabases;
+import dev.mzcy.database.metrics.InMemoryMetricsRegistry;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.nosql.JSONDatabase;
+import dev.mzcy.database.sql.SQLiteDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the tiered cache with a JSON database as the remote database and SQLite as the local store.
+ */
+class TieredCacheDatabaseTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+    private JSONDatabase<Person> remote;
+    private SQLiteDatabase<Person> local;
+    private InMemoryMetricsRegistry registry;
+
+    @BeforeEach
+    void createDatabases() {
+        databases = new TestDatabases(directory);
+        remote = databases.json("remote");
+        local = databases.sqlite("local");
+        registry = new InMemoryMetricsRegistry();
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        databases.close();
+    }
+
+    @Test
+    void readsFillBothTiers() {
+        remote.save(new Person("a", "first"));
+        TieredCacheDatabase<Person> cache = cache(10);
+
+        assertEquals("first", cache.getEntity("a").name);
+        assertEquals("first", local.getEntity("a").name);
+        assertEquals("first", cache.getEntity("a").name);
+
+        assertEquals(1, registry.getCount("cache", "near", OperationMetrics.CACHE_HIT));
+        assertEquals(1, registry.getCount("cache", "local", OperationMetrics.CACHE_MISS));
+        cache.close();
+    }
+
+    @Test
+    void entitiesEvictedFromTheNearCacheAreReadFromTheLocalStore() {
+        remote.saveAll(List.of(new Person("a", "first"), new Person("b", "second")));
+        TieredCacheDatabase<Person> cache = cache(1);
+        cache.getEntities(List.of("a", "b"));
+
+        assertEquals("first", cache.getEntity("a").name);
+        assertEquals(1, registry.getCount("cache", "local", OperationMetrics.CACHE_HIT));
+        cache.close();
+    }
+
+    @Test
+    void restartedCacheServesTheLocalStore() {
+        remote.save(new Person("a", "first"));
+        TieredCacheDatabase<Person> cache = cache(10);
+        cache.getEntity("a");
+        cache.close();
+        // Not seen by any cache, so the restarted one still has its local copy
+        remote.deleteEntity("a");
+
+        TieredCacheDatabase<Person> restarted = cache(10);
+        assertEquals("first", restarted.getEntity("a").name);
+        assertEquals(1, registry.getCount("cache", "local", OperationMetrics.CACHE_HIT));
+        restarted.close();
+    }
+
+    @Test
+    void remoteChangesInvalidateCachedCopies() throws InterruptedException {
+        remote.save(new Person("a", "first"));
+        TieredCacheDatabase<Person> cache = cache(10);
+        assertEquals("first", cache.getEntity("a").name);
+
+        remote.save(new Person("a", "changed"));
+        awaitEquals("changed", () -> cache.getEntity("a").name);
+
+        remote.deleteEntity("a");
+        awaitEquals(null, () -> cache.getEntity("a"));
+        assertNull(local.getEntity("a"));
+        cache.close();
+    }
+
+    @Test
+    void sqlChangesWithoutEntitiesInvalidate() throws InterruptedException {
+        SQLiteDatabase<Person> sqlRemote = databases.sqlite("remote");
+        SQLiteDatabase<Person> otherNode = databases.sqlite("remote");
+        otherNode.enableChangelog();
+        otherNode.save(new Person("a", "first"));
+        TieredCacheDatabase<Person> cache = new TieredCacheDatabase<>(sqlRemote, local, person -> person.id,
+                new CachePolicy(10, EvictionPolicy.LRU), new CachePolicy(100, EvictionPolicy.FIFO));
+        assertEquals("first", cache.getEntity("a").name);
+
+        otherNode.save(new Person("a", "changed"));
+        awaitEquals("changed", () -> cache.getEntity("a").name);
+        cache.close();
+    }
+
+    @Test
+    void savesAndDeletesWriteThrough() {
+        TieredCacheDatabase<Person> cache = cache(10);
+
+        cache.save(new Person("a", "first"));
+        assertEquals("first", remote.getEntity("a").name);
+        assertEquals("first", cache.getEntity("a").name);
+
+        cache.deleteEntity("a");
+        assertNull(remote.getEntity("a"));
+        assertNull(local.getEntity("a"));
+        assertNull(cache.getEntity("a"));
+        cache.close();
+    }
+
+    private TieredCacheDatabase<Person> cache(int nearEntries) {
+        TieredCacheDatabase<Person> cache = new TieredCacheDatabase<>(remote, local, person -> person.id,
+                new CachePolicy(nearEntries, EvictionPolicy.LRU), new CachePolicy(100, EvictionPolicy.FIFO));
+        cache.setMetricsRecorder(registry);
+        return cache;
+    }
+
+    private static void awaitEquals(Object expected, Supplier<Object> actual) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!java.util.Objects.equals(expected, actual.get()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, actual.get());
+    }
+}
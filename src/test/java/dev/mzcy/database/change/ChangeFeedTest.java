@@ -0,0 +1,79 @@
+package dev.mzcy.database.change;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests delivery and the overflow policy of the change feed.
+ */
+class ChangeFeedTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final ChangeFeed<String> feed = new ChangeFeed<>("test-changes", 16, 4);
+
+    @AfterEach
+    void closeFeed() {
+        feed.close();
+    }
+
+    @Test
+    void eventsAreDeliveredInOrder() throws InterruptedException {
+        BlockingQueue<ChangeEvent<String>> events = new LinkedBlockingQueue<>();
+        feed.subscribe(events::add);
+
+        feed.publish(event(ChangeType.SAVE, "a"));
+        feed.publish(event(ChangeType.DELETE, "a"));
+
+        assertEquals("SAVE a", describe(events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertEquals("DELETE a", describe(events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void fullQueueIsReplacedByAnOverflowEvent() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<List<ChangeEvent<String>>> batches = new LinkedBlockingQueue<>();
+        feed.subscribeBatches(batch -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batches.add(batch);
+        });
+        feed.publish(event(ChangeType.SAVE, "first"));
+        assertTrue(blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            feed.publish(event(ChangeType.SAVE, "key" + i));
+        }
+        feed.publish(event(ChangeType.DELETE, "last"));
+        release.countDown();
+
+        assertEquals("SAVE first", describe(batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS).get(0)));
+        List<ChangeEvent<String>> rest = batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(ChangeType.OVERFLOW, rest.get(0).getType());
+        assertNull(rest.get(0).getKey());
+        assertEquals("DELETE last", describe(rest.get(rest.size() - 1)));
+        assertTrue(rest.size() <= 4);
+    }
+
+    private static ChangeEvent<String> event(ChangeType type, String key) {
+        return new ChangeEvent<>(type, key, null, Instant.now());
+    }
+
+    private static String describe(ChangeEvent<String> event) {
+        return event.getType() + " " + event.getKey();
+    }
+}
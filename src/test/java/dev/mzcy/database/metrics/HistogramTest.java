@@ -0,0 +1,58 @@
+package dev.mzcy.database.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the power-of-two bucket histogram.
+ */
+class HistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(0.99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void tracksCountSumMeanAndMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(30);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(60, histogram.getSum());
+        assertEquals(20, histogram.getMean());
+        assertEquals(30, histogram.getMax());
+    }
+
+    @Test
+    void percentilesAreAccurateWithinAFactorOfTwo() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        long median = histogram.getPercentile(0.5);
+        assertTrue(median >= 500 && median < 1000, "p50 was " + median);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p99 >= 990 && p99 <= 1000, "p99 was " + p99);
+        assertEquals(1000, histogram.getPercentile(1));
+    }
+
+    @Test
+    void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+}
@@ -0,0 +1,83 @@
+package dev.mzcy.database.metrics;
+
+import dev.mzcy.database.Person;
+import dev.mzcy.database.credentials.DatabaseCredentials;
+import dev.mzcy.database.nosql.JSONDatabase;
+import dev.mzcy.database.sql.SQLiteDatabase;
+import dev.mzcy.database.sql.table.TableBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that databases report their operations to an {@link InMemoryMetricsRegistry}.
+ */
+class MetricsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sqliteReportsTimersAndCounters() {
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        SQLiteDatabase<Person> database = new SQLiteDatabase<>(
+                DatabaseCredentials.createSQLiteDatabase(directory.resolve("person.db").toString()), "person", Person.class, registry);
+        database.createTable(new TableBuilder("person").addColumn("id VARCHAR(32) PRIMARY KEY").addColumn("name TEXT"));
+
+        database.save(new Person("a", "first"));
+        database.save(new Person("b", "second"));
+        assertNotNull(database.getEntity("a"));
+        assertNull(database.getEntity("missing"));
+        database.getEntities(List.of("a", "b"));
+
+        assertEquals(2, registry.getTimer("sqlite", "person", OperationMetrics.SAVE).getCount());
+        assertEquals(2, registry.getTimer("sqlite", "person", OperationMetrics.GET).getCount());
+        assertEquals(1, registry.getTimer("sqlite", "person", OperationMetrics.GET_MANY).getCount());
+        assertEquals(2, registry.getCount("sqlite", "person", OperationMetrics.ROWS_WRITTEN));
+        assertEquals(3, registry.getCount("sqlite", "person", OperationMetrics.ROWS_READ));
+        assertTrue(registry.dump().contains("save{backend=sqlite,table=person}"));
+        database.close();
+    }
+
+    @Test
+    void recorderCanBeReplaced() {
+        InMemoryMetricsRegistry first = new InMemoryMetricsRegistry();
+        InMemoryMetricsRegistry second = new InMemoryMetricsRegistry();
+        JSONDatabase<Person> database = new JSONDatabase<>(directory.resolve("person.json").toString(), Person.class, first);
+
+        database.save(new Person("a", "first"));
+        database.setMetricsRecorder(second);
+        database.save(new Person("b", "second"));
+
+        assertEquals(1, first.getTimer("json", "person.json", OperationMetrics.SAVE).getCount());
+        assertEquals(1, second.getTimer("json", "person.json", OperationMetrics.SAVE).getCount());
+    }
+
+    @Test
+    void disabledRecorderIsNeverAsked() {
+        MetricsRecorder disabled = new MetricsRecorder() {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+
+            @Override
+            public void recordTime(String backend, String table, String metric, long nanos) {
+                fail("recorded " + metric);
+            }
+
+            @Override
+            public void recordCount(String backend, String table, String metric, long amount) {
+                fail("counted " + metric);
+            }
+        };
+        JSONDatabase<Person> database = new JSONDatabase<>(directory.resolve("person.json").toString(), Person.class, disabled);
+
+        database.save(new Person("a", "first"));
+        assertNotNull(database.getEntity("a"));
+    }
+}
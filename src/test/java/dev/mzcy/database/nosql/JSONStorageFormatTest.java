@@ -0,0 +1,78 @@
+package dev.mzcy.database.nosql;
+
+import dev.mzcy.database.Person;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that every storage format of the JSON database reads back what it wrote, and that a
+ * corrupted compressed file is refused instead of overwritten.
+ */
+class JSONStorageFormatTest {
+
+    @TempDir
+    Path directory;
+    private final List<JSONDatabase<Person>> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeDatabases() {
+        opened.forEach(JSONDatabase::close);
+    }
+
+    @ParameterizedTest
+    @EnumSource(JSONStorageFormat.class)
+    void entitiesRoundTrip(JSONStorageFormat format) {
+        Path file = directory.resolve("person.json");
+        JSONDatabase<Person> database = open(file, format);
+        database.saveAll(List.of(new Person("a", "first"), new Person("b", "second ä")));
+        database.close();
+
+        Map<String, Person> read = open(file, format).getEntities(List.of("a", "b"));
+        assertEquals("a:first", read.get("a").toString());
+        assertEquals("b:second ä", read.get("b").toString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(JSONStorageFormat.class)
+    void filesOfAnyFormatAreRecognized(JSONStorageFormat format) {
+        Path file = directory.resolve("person.json");
+        JSONDatabase<Person> database = open(file, JSONStorageFormat.COMPRESSED);
+        database.save(new Person("a", "first"));
+        database.close();
+
+        assertEquals("a:first", open(file, format).getEntity("a").toString());
+    }
+
+    @Test
+    void corruptedCompressedFileIsNotOverwritten() throws IOException {
+        Path file = directory.resolve("person.json");
+        JSONDatabase<Person> database = open(file, JSONStorageFormat.COMPRESSED);
+        database.save(new Person("a", "first"));
+        database.close();
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 20] ^= 0x5A;
+        Files.write(file, content);
+
+        assertThrows(IllegalStateException.class, () -> open(file, JSONStorageFormat.COMPRESSED));
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    private JSONDatabase<Person> open(Path file, JSONStorageFormat format) {
+        JSONDatabase<Person> database = new JSONDatabase<>(file.toString(), Person.class, format, MetricsRecorder.NOOP);
+        opened.add(database);
+        return database;
+    }
+}
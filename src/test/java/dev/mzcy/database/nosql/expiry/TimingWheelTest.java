@@ -0,0 +1,76 @@
+package dev.mzcy.database.nosql.expiry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the hashed timing wheel on a simulated clock: ticks of 10 ms over 8 slots.
+ */
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final int SLOTS = 8;
+
+    @Test
+    void expiresKeysOnceTheirTickElapsed() {
+        TimingWheel wheel = new TimingWheel(TICK, SLOTS, 0);
+        wheel.schedule("a", 15);
+        wheel.schedule("b", 35);
+
+        assertEquals(List.of(), wheel.advance(15, 100));
+        assertTrue(wheel.isExpired("a", 15));
+        assertEquals(List.of("a"), wheel.advance(20, 100));
+        assertEquals(List.of(), wheel.advance(30, 100));
+        assertEquals(List.of("b"), wheel.advance(40, 100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledKeysNeverExpire() {
+        TimingWheel wheel = new TimingWheel(TICK, SLOTS, 0);
+        wheel.schedule("a", 15);
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+        assertEquals(List.of(), wheel.advance(100, 100));
+        assertFalse(wheel.isExpired("a", 100));
+    }
+
+    @Test
+    void rescheduledKeysExpireAtTheirNewDeadline() {
+        TimingWheel wheel = new TimingWheel(TICK, SLOTS, 0);
+        wheel.schedule("a", 15);
+        wheel.schedule("a", 55);
+
+        assertEquals(List.of(), wheel.advance(20, 100));
+        assertEquals(55L, wheel.getDeadline("a"));
+        assertEquals(List.of("a"), wheel.advance(60, 100));
+    }
+
+    @Test
+    void deadlinesBeyondOneRevolutionWaitForTheirTurn() {
+        TimingWheel wheel = new TimingWheel(TICK, SLOTS, 0);
+        long deadline = TICK * SLOTS + 5;
+        wheel.schedule("a", deadline);
+
+        assertEquals(List.of(), wheel.advance(TICK, 100));
+        assertEquals(List.of(), wheel.advance(TICK * SLOTS, 100));
+        assertEquals(List.of("a"), wheel.advance(deadline + TICK, 100));
+    }
+
+    @Test
+    void advanceStopsAtTheLimitAndContinuesLater() {
+        TimingWheel wheel = new TimingWheel(TICK, SLOTS, 0);
+        for (int i = 0; i < 5; i++) {
+            wheel.schedule("k" + i, 5);
+        }
+
+        assertEquals(2, wheel.advance(10, 2).size());
+        assertEquals(2, wheel.advance(10, 2).size());
+        assertEquals(1, wheel.advance(10, 2).size());
+        assertEquals(0, wheel.size());
+    }
+}
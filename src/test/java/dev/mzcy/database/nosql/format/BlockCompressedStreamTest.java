@@ -0,0 +1,84 @@
+package dev.mzcy.database.nosql.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the block-compressed format: round trips over several blocks, and corrupted or cut off
+ * files being reported instead of read as shorter data.
+ */
+class BlockCompressedStreamTest {
+
+    /** Size of the block header and of the trailer. */
+    private static final int HEADER_SIZE = 12;
+
+    @Test
+    void dataSpanningSeveralBlocksRoundTrips() throws IOException {
+        byte[] data = data(BlockFormat.DEFAULT_BLOCK_SIZE * 2 + 1000);
+
+        assertArrayEquals(data, decompress(compress(data)));
+    }
+
+    @Test
+    void emptyDataRoundTrips() throws IOException {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0])));
+    }
+
+    @Test
+    void corruptedBlockIsDetected() throws IOException {
+        byte[] file = compress(data(10_000));
+        int firstBlock = BlockFormat.MAGIC.length + 1 + HEADER_SIZE;
+        file[firstBlock + 100] ^= 0x5A;
+
+        assertThrows(CorruptedDataException.class, () -> decompress(file));
+    }
+
+    @Test
+    void truncatedTrailerIsDetected() throws IOException {
+        byte[] file = compress(data(10_000));
+
+        assertThrows(CorruptedDataException.class, () -> decompress(Arrays.copyOf(file, file.length - 4)));
+        assertThrows(CorruptedDataException.class, () -> decompress(Arrays.copyOf(file, file.length - HEADER_SIZE)));
+    }
+
+    @Test
+    void fileCutInsideABlockIsDetected() throws IOException {
+        byte[] file = compress(data(10_000));
+
+        assertThrows(CorruptedDataException.class, () -> decompress(Arrays.copyOf(file, file.length / 2)));
+    }
+
+    private static byte[] data(int size) {
+        // Text-like data, so blocks actually compress
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new BlockCompressedOutputStream(bytes, Deflater.BEST_SPEED)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] file) throws IOException {
+        try (InputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+}
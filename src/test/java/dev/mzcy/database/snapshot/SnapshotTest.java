@@ -0,0 +1,105 @@
+package dev.mzcy.database.snapshot;
+
+import dev.mzcy.database.Database;
+import dev.mzcy.database.Person;
+import dev.mzcy.database.TestDatabases;
+import dev.mzcy.database.nosql.JSONDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests full and incremental snapshots of the file based databases by restoring them into a
+ * second directory.
+ */
+class SnapshotTest {
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+    private TestDatabases restored;
+
+    @BeforeEach
+    void createDatabases() throws IOException {
+        databases = new TestDatabases(directory);
+        restored = new TestDatabases(Files.createDirectory(directory.resolve("restore")));
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        restored.close();
+        databases.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void fullAndIncrementalSnapshotsRestore(String backend) throws IOException {
+        Database<Person> database = databases.open(backend, "person");
+        Snapshottable snapshottable = (Snapshottable) database;
+        database.save(new Person("a", "first"));
+        database.save(new Person("b", "second"));
+
+        SnapshotReport full = snapshottable.snapshot(directory.resolve("full"));
+        assertFalse(full.isIncremental());
+        assertEquals(2, full.getSaved());
+
+        database.save(new Person("b", "changed"));
+        database.save(new Person("c", "third"));
+        database.deleteEntity("a");
+        SnapshotReport first = snapshottable.incrementalSnapshot(directory.resolve("inc-1"));
+        assertTrue(first.isIncremental());
+        assertEquals(2, first.getSaved());
+        assertEquals(1, first.getDeleted());
+
+        database.save(new Person("d", "fourth"));
+        SnapshotReport second = snapshottable.incrementalSnapshot(directory.resolve("inc-2"));
+        assertEquals(1, second.getSaved());
+        assertEquals(0, second.getDeleted());
+
+        Files.copy(directory.resolve("full"), directory.resolve("restore").resolve(backend.equals("json") ? "person.json" : "person.db"));
+        Database<Person> restore = restored.open(backend, "person");
+        ((Snapshottable) restore).applyIncrementalSnapshot(directory.resolve("inc-1"));
+        ((Snapshottable) restore).applyIncrementalSnapshot(directory.resolve("inc-2"));
+
+        assertEquals(List.of("b:changed", "c:third", "d:fourth"),
+                restore.page(null, 10).getEntities().stream().map(Person::toString).toList());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sqlite", "json"})
+    void incrementalSnapshotNeedsAFullOne(String backend) {
+        Snapshottable database = (Snapshottable) databases.open(backend, "person");
+
+        assertThrows(IllegalStateException.class, () -> database.incrementalSnapshot(directory.resolve("inc-1")));
+        assertFalse(Files.exists(directory.resolve("inc-1")));
+    }
+
+    @Test
+    void jsonSnapshotIsACopyOfTheFileAsOfTheCall() throws IOException {
+        JSONDatabase<Person> database = databases.json("person");
+        database.snapshot(directory.resolve("empty"));
+        database.save(new Person("a", "first"));
+
+        database.snapshot(directory.resolve("full"));
+        database.save(new Person("a", "changed"));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().contains(".snapshot-")));
+        }
+        Files.copy(directory.resolve("empty"), directory.resolve("restore").resolve("empty.json"));
+        Files.copy(directory.resolve("full"), directory.resolve("restore").resolve("person.json"));
+        assertNull(restored.json("empty").getEntity("a"));
+        assertEquals("first", restored.json("person").getEntity("a").name);
+    }
+}
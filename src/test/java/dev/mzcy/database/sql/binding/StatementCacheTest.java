@@ -0,0 +1,109 @@
+package dev.mzcy.database.sql.binding;
+
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests eviction of the statement cache on an in-memory SQLite connection.
+ */
+class StatementCacheTest {
+
+    private Connection connection;
+    private StatementCache statements;
+    private OperationMetrics metrics;
+
+    @BeforeEach
+    void openConnection() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        statements = new StatementCache(connection, 2);
+        metrics = new OperationMetrics("sqlite", MetricsRecorder.NOOP);
+    }
+
+    @AfterEach
+    void closeConnection() throws SQLException {
+        statements.close();
+        connection.close();
+    }
+
+    @Test
+    void unusedStatementsAreClosedOnEviction() throws SQLException {
+        statements.preload("SELECT 1;", metrics, "test");
+        PreparedStatement first = statements.prepare("SELECT 1;", metrics, "test");
+        statements.release(first);
+
+        statements.preload("SELECT 2;", metrics, "test");
+        statements.preload("SELECT 3;", metrics, "test");
+
+        assertTrue(first.isClosed());
+    }
+
+    @Test
+    void statementsInUseAreClosedByTheirLastRelease() throws SQLException {
+        PreparedStatement first = statements.prepare("SELECT 1;", metrics, "test");
+        PreparedStatement again = statements.prepare("SELECT 1;", metrics, "test");
+        statements.preload("SELECT 2;", metrics, "test");
+        statements.preload("SELECT 3;", metrics, "test");
+
+        assertSame(first, again);
+        assertFalse(first.isClosed());
+        assertEquals(1, select(first));
+
+        statements.release(first);
+        assertFalse(first.isClosed());
+        statements.release(again);
+        assertTrue(first.isClosed());
+    }
+
+    @Test
+    void concurrentEvictionNeverClosesAStatementInUse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread;
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        int value = (offset + i) % 5;
+                        PreparedStatement statement = statements.prepare("SELECT " + value + ";", metrics, "test");
+                        try {
+                            assertEquals(value, select(statement));
+                        } finally {
+                            statements.release(statement);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int select(PreparedStatement statement) throws SQLException {
+        synchronized (statement) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertTrue(resultSet.next());
+                return resultSet.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package dev.mzcy.database.sql.expiry;
+
+import dev.mzcy.database.change.ChangeFeed;
+import dev.mzcy.database.metrics.MetricsRecorder;
+import dev.mzcy.database.metrics.OperationMetrics;
+import dev.mzcy.database.sql.binding.StatementCache;
+import dev.mzcy.database.sql.change.SQLChangelog;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the expiry of a table whose connection could not be opened.
+ */
+class SQLExpiryTest {
+
+    @Test
+    void missingConnectionLeavesExpiryDisabled() {
+        StatementCache statements = new StatementCache(null);
+        SQLChangelog<Object> changelog = new SQLChangelog<>(null, statements, "person", "INTEGER PRIMARY KEY", "TEXT",
+                new ChangeFeed<>("test-changes"), SQLChangelog.DEFAULT_POLL_INTERVAL, null);
+        try (SQLExpiry expiry = new SQLExpiry(null, statements, "person", "DELETE FROM %1$s;", changelog,
+                new OperationMetrics("sqlite", MetricsRecorder.NOOP), SQLExpiry.DEFAULT_SWEEP_INTERVAL)) {
+            assertFalse(expiry.isEnabled());
+            expiry.start();
+            assertThrows(SQLException.class, expiry::enable);
+            assertFalse(expiry.isEnabled());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.mzcy.database.sql.profiler;
+
+import dev.mzcy.database.Person;
+import dev.mzcy.database.TestDatabases;
+import dev.mzcy.database.sql.SQLiteDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the query profiler on SQLite with a threshold of zero, so every statement is recorded.
+ */
+class QueryProfilerTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+    private SQLiteDatabase<Person> database;
+
+    @BeforeEach
+    void createDatabase() {
+        databases = new TestDatabases(directory);
+        database = databases.sqlite("person");
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        databases.close();
+    }
+
+    @Test
+    void slowStatementsAreRecordedWithTheirPlan() throws InterruptedException {
+        database.setProfiler(new QueryProfiler(Duration.ZERO, 10, true));
+        database.save(new Person("a", "first"));
+
+        assertNotNull(database.getEntity("a"));
+
+        ProfiledQuery query = await(database.getProfiler(), database.getTableStatements().getSelectById());
+        assertEquals(1, query.getRows());
+        assertEquals(1, query.getParameterCount());
+        assertNotNull(query.getPlan());
+        assertFalse(query.getPlan().isEmpty());
+    }
+
+    @Test
+    void waitingForTheWriteLockIsNotPartOfTheTrace() throws Exception {
+        database.setProfiler(new QueryProfiler(Duration.ZERO, 10, false));
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                database.getStatements().beginWrite(false);
+                try {
+                    locked.countDown();
+                    Thread.sleep(300);
+                } finally {
+                    database.getStatements().endWrite();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        assertTrue(locked.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        database.save(new Person("a", "first"));
+        writer.join();
+
+        ProfiledQuery query = await(database.getProfiler(), database.getTableStatements().getUpsert());
+        assertTrue(query.getTotalNanos() < TimeUnit.MILLISECONDS.toNanos(200), "trace included the lock wait: " + query);
+        assertEquals(1, query.getRows());
+    }
+
+    private static ProfiledQuery await(QueryProfiler profiler, String sql) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            List<ProfiledQuery> slowest = profiler.getSlowest();
+            for (ProfiledQuery query : slowest) {
+                if (query.getSql().equals(sql)) {
+                    return query;
+                }
+            }
+            Thread.sleep(20);
+        }
+        return fail("not recorded: " + sql);
+    }
+}
@@ -0,0 +1,183 @@
+package dev.mzcy.database.sql.replica;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the replica router against stand-in replicas: in-memory SQLite connections whose
+ * replication lag is set by the test through the lag probe.
+ */
+class ReplicaRouterTest {
+
+    private static final Duration STICKINESS = Duration.ofMillis(200);
+    private static final Duration MAX_LAG = Duration.ofMillis(100);
+
+    private final Map<Connection, String> names = new ConcurrentHashMap<>();
+    private final Map<String, Long> lag = new ConcurrentHashMap<>();
+    private final LagProbe probe = connection -> {
+        Long millis = lag.get(names.get(connection));
+        if (millis == null) {
+            throw new SQLException("Access denied; you need the REPLICATION CLIENT privilege for this operation");
+        }
+        return millis;
+    };
+    private ReplicaRouter router;
+
+    @AfterEach
+    void closeRouter() {
+        if (router != null) {
+            router.close();
+        }
+    }
+
+    @Test
+    void roundRobinSpreadsReadsOverReplicas() {
+        ReplicaEndpoint first = replica("first");
+        ReplicaEndpoint second = replica("second");
+        router = router(ReplicaSelection.ROUND_ROBIN, first, second);
+
+        assertTrue(first.isHealthy());
+        assertTrue(second.isHealthy());
+        assertSame(first, router.route());
+        assertSame(second, router.route());
+        assertSame(first, router.route());
+        assertSame(second, router.route());
+    }
+
+    @Test
+    void leastLatencyPrefersFastestReplica() {
+        ReplicaEndpoint first = replica("first");
+        ReplicaEndpoint second = replica("second");
+        router = router(ReplicaSelection.LEAST_LATENCY, first, second);
+
+        router.recordLatency(first, 5_000_000L);
+        router.recordLatency(second, 1_000_000L);
+
+        assertSame(second, router.route());
+        assertSame(second, router.route());
+    }
+
+    @Test
+    void readsStickToPrimaryAfterWrite() throws Exception {
+        ReplicaEndpoint replica = replica("replica");
+        router = router(ReplicaSelection.ROUND_ROBIN, replica);
+
+        router.wrote();
+        assertNull(router.route(), "reads right after a write must go to the primary");
+
+        AtomicReference<ReplicaEndpoint> otherThread = new AtomicReference<>();
+        Thread reader = new Thread(() -> otherThread.set(router.route()));
+        reader.start();
+        reader.join();
+        assertSame(replica, otherThread.get(), "other threads are not affected by the write");
+
+        Thread.sleep(STICKINESS.toMillis() + 50);
+        assertSame(replica, router.route(), "reads return to the replica once the window passed");
+    }
+
+    @Test
+    void readsOnPrimaryBypassTheReplicas() {
+        ReplicaEndpoint replica = replica("replica");
+        router = router(ReplicaSelection.ROUND_ROBIN, replica);
+
+        assertNull(router.onPrimary(() -> router.onPrimary(router::route)));
+        assertSame(replica, router.route(), "reads outside return to the replica");
+    }
+
+    @Test
+    void stickinessShorterThanTheMaximumLagIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ReplicaRouter(List.of(), ReplicaSelection.ROUND_ROBIN,
+                MAX_LAG.minusMillis(1), MAX_LAG, probe));
+    }
+
+    @Test
+    void laggingReplicaIsEjectedUntilItCatchesUp() {
+        ReplicaEndpoint first = replica("first");
+        ReplicaEndpoint second = replica("second");
+        router = router(ReplicaSelection.ROUND_ROBIN, first, second);
+
+        lag.put("first", MAX_LAG.toMillis() * 10);
+        router.checkHealth();
+        assertFalse(first.isHealthy());
+        for (int i = 0; i < 4; i++) {
+            assertSame(second, router.route());
+        }
+
+        lag.put("first", 0L);
+        router.checkHealth();
+        assertTrue(first.isHealthy());
+        assertNull(first.getProblem());
+        assertTrue(List.of(router.route(), router.route()).contains(first));
+    }
+
+    @Test
+    void failedProbeEjectsReplicaAndKeepsTheReason() {
+        ReplicaEndpoint replica = replica("replica");
+        lag.remove("replica");
+        router = router(ReplicaSelection.ROUND_ROBIN, replica);
+
+        assertFalse(replica.isHealthy());
+        assertNull(router.route(), "without a healthy replica reads go to the primary");
+        assertNotNull(replica.getProblem());
+        assertTrue(replica.getProblem().contains("REPLICATION CLIENT"));
+    }
+
+    @Test
+    void ejectedReplicaReturnsAfterHealthCheck() {
+        ReplicaEndpoint first = replica("first");
+        ReplicaEndpoint second = replica("second");
+        router = router(ReplicaSelection.ROUND_ROBIN, first, second);
+
+        router.eject(first);
+        for (int i = 0; i < 4; i++) {
+            assertSame(second, router.route());
+        }
+
+        router.checkHealth();
+        assertTrue(first.isHealthy());
+    }
+
+    @Test
+    void primaryOnlyRoutesEverythingToThePrimary() {
+        assertFalse(ReplicaRouter.PRIMARY_ONLY.hasReplicas());
+        ReplicaRouter.PRIMARY_ONLY.wrote();
+        assertNull(ReplicaRouter.PRIMARY_ONLY.route());
+    }
+
+    /**
+     * Creates a stand-in replica that reports no lag until the test changes it.
+     *
+     * @param name the replica name
+     * @return the replica
+     */
+    private ReplicaEndpoint replica(String name) {
+        lag.put(name, 0L);
+        return new ReplicaEndpoint(name, () -> {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+            names.put(connection, name);
+            return connection;
+        });
+    }
+
+    /**
+     * Creates a router over the given replicas, without background health checks.
+     *
+     * @param selection the selection strategy
+     * @param replicas the replicas
+     * @return the router
+     */
+    private ReplicaRouter router(ReplicaSelection selection, ReplicaEndpoint... replicas) {
+        return new ReplicaRouter(List.of(replicas), selection, STICKINESS, MAX_LAG, probe);
+    }
+}
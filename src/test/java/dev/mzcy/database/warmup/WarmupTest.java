@@ -0,0 +1,134 @@
+package dev.mzcy.database.warmup;
+
+import dev.mzcy.database.Database;
+import dev.mzcy.database.Person;
+import dev.mzcy.database.TestDatabases;
+import dev.mzcy.database.cache.CachePolicy;
+import dev.mzcy.database.credentials.DatabaseCredentials;
+import dev.mzcy.database.cache.EvictionPolicy;
+import dev.mzcy.database.cache.TieredCacheDatabase;
+import dev.mzcy.database.nosql.JSONDatabase;
+import dev.mzcy.database.sql.SQLiteDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests warm-up through the tiered cache, the failure count, and the recent keys it starts from.
+ */
+class WarmupTest {
+
+    @TempDir
+    Path directory;
+    private TestDatabases databases;
+
+    @BeforeEach
+    void createDatabases() {
+        databases = new TestDatabases(directory);
+    }
+
+    @AfterEach
+    void closeDatabases() {
+        databases.close();
+    }
+
+    @Test
+    void warmUpFillsTheCache() {
+        JSONDatabase<Person> remote = databases.json("remote");
+        SQLiteDatabase<Person> local = databases.sqlite("local");
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            people.add(new Person("k" + i, "n" + i));
+        }
+        remote.saveAll(people);
+        TieredCacheDatabase<Person> cache = new TieredCacheDatabase<>(remote, local, person -> person.id,
+                new CachePolicy(1000, EvictionPolicy.LRU), new CachePolicy(1000, EvictionPolicy.LRU));
+        List<String> keys = new ArrayList<>(people.stream().map(person -> person.id).toList());
+        keys.add("missing");
+
+        WarmupReport report = Warmup.run(cache, keys, 4, 100);
+
+        assertEquals(251, report.getRequested());
+        assertEquals(250, report.getLoaded());
+        assertEquals(0, report.getFailed());
+        assertEquals(250, local.getEntities(keys).size());
+        cache.close();
+    }
+
+    @Test
+    void failedBatchesAreCounted() {
+        Database<Person> failing = new InMemoryDatabase() {
+            @Override
+            public Map<String, Person> getEntities(Collection<String> keys) {
+                if (keys.contains("poison")) {
+                    throw new IllegalStateException("read failed");
+                }
+                return super.getEntities(keys);
+            }
+        };
+        failing.save(new Person("a", "first"));
+
+        WarmupReport report = Warmup.run(failing, List.of("a", "b", "poison", "c"), 2, 2);
+
+        assertEquals(4, report.getRequested());
+        assertEquals(1, report.getLoaded());
+        assertEquals(2, report.getFailed());
+    }
+
+    @Test
+    void sqlReadFailuresAreCounted() {
+        SQLiteDatabase<Person> withoutTable = new SQLiteDatabase<>(
+                DatabaseCredentials.createSQLiteDatabase(directory.resolve("empty.db").toString()), "person", Person.class);
+        try {
+            assertThrows(IllegalStateException.class, () -> withoutTable.getEntities(List.of("a")));
+
+            WarmupReport report = Warmup.run(withoutTable, List.of("a", "b", "c"), 2, 2);
+
+            assertEquals(0, report.getLoaded());
+            assertEquals(3, report.getFailed());
+        } finally {
+            withoutTable.close();
+        }
+    }
+
+    @Test
+    void recentKeysSurviveARestart() {
+        Path file = directory.resolve("recent-keys.txt");
+        RecentKeys recentKeys = new RecentKeys(file, 2);
+        recentKeys.record("a");
+        recentKeys.record("b");
+        recentKeys.record("a");
+        recentKeys.record("c");
+        recentKeys.close();
+
+        assertEquals(List.of("c", "a"), new RecentKeys(file, 2).top(10));
+    }
+
+    /**
+     * Database implementing only the required methods, relying on the defaults for the rest.
+     */
+    private static class InMemoryDatabase implements Database<Person> {
+
+        private final Map<String, Person> entities = new HashMap<>();
+
+        @Override
+        public synchronized void save(Person entity) {
+            entities.put(entity.id, entity);
+        }
+
+        @Override
+        public synchronized Person getEntity(String key) {
+            return entities.get(key);
+        }
+    }
+}